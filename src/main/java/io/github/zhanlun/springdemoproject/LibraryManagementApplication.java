@@ -1,20 +1,25 @@
 package io.github.zhanlun.springdemoproject;
 
+import io.github.zhanlun.springdemoproject.security.AdaptiveBCryptPasswordEncoder;
 import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
 import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleService;
 import io.github.zhanlun.springdemoproject.usermgmt.user.AppUser;
 import io.github.zhanlun.springdemoproject.usermgmt.user.AppUserService;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.util.ArrayList;
 
 @SpringBootApplication
+@EnableScheduling
 public class LibraryManagementApplication {
 
     public static void main(String[] args) {
@@ -22,9 +27,24 @@ public class LibraryManagementApplication {
     }
 
 
+    // a configured strength keeps hosts on different hardware from re-hashing each other's passwords;
+    // calibration suits deployments where every host runs on the same hardware
     @Bean
-    PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    PasswordEncoder passwordEncoder(@Value("${app.security.bcrypt.strength:10}") int strength,
+                                    @Value("${app.security.bcrypt.min-strength:10}") int minStrength,
+                                    @Value("${app.security.bcrypt.calibrate:false}") boolean calibrate,
+                                    @Value("${app.security.bcrypt.target-millis:50}") long targetMillis,
+                                    @Value("${app.security.bcrypt.max-strength:14}") int maxStrength) {
+        if (calibrate) {
+            strength = AdaptiveBCryptPasswordEncoder.calibrateStrength(targetMillis, minStrength, maxStrength);
+        }
+        return new AdaptiveBCryptPasswordEncoder(strength, minStrength);
+    }
+
+    // times service methods annotated with @Timed, tagged by class and method
+    @Bean
+    TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
     }
 
     @Profile("!test")
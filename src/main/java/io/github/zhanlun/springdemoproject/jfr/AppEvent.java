@@ -0,0 +1,54 @@
+package io.github.zhanlun.springdemoproject.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+
+/**
+ * Fields shared by the application's flight recorder events. They are only
+ * filled in once {@link #shouldCommit()} says the event passed its
+ * threshold, so events below it cost no more than the timestamps.
+ */
+@Category({"Spring Demo Project"})
+@StackTrace(false)
+public abstract class AppEvent extends Event {
+    @Label("Username Hash")
+    @Description("First 8 bytes of the SHA-256 of the username, so events of one user can be grouped without recording the name")
+    protected long usernameHash;
+
+    @Label("Endpoint")
+    protected String endpoint;
+
+    @Label("Role Count")
+    protected int roleCount;
+
+    public void describe(String username, Collection<?> authorities, String endpoint) {
+        this.usernameHash = hash(username);
+        this.roleCount = authorities == null ? 0 : authorities.size();
+        this.endpoint = endpoint;
+    }
+
+    static long hash(String username) {
+        if (username == null || username.isEmpty()) {
+            return 0;
+        }
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(username.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long hash = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash = (hash << 8) | (digest[i] & 0xff);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.zhanlun.springdemoproject.jfr;
+
+import io.github.zhanlun.springdemoproject.util.RequestPaths;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Emits {@link UserServiceEvent} and {@link RepositoryEvent} around calls
+ * into {@code AppUserService} and the Spring Data repositories. The user
+ * and endpoint are taken from the current request, when there is one.
+ */
+@Aspect
+@Component
+public class FlightRecorderAspect {
+
+    @Around("within(io.github.zhanlun.springdemoproject.usermgmt.user.AppUserService)")
+    public Object recordUserService(ProceedingJoinPoint joinPoint) throws Throwable {
+        UserServiceEvent event = new UserServiceEvent();
+        event.begin();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                describe(event);
+                event.method = joinPoint.getSignature().getName();
+                event.commit();
+            }
+        }
+    }
+
+    @Around("execution(* org.springframework.data.repository.Repository+.*(..))")
+    public Object recordRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        RepositoryEvent event = new RepositoryEvent();
+        event.begin();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                describe(event);
+                event.repository = joinPoint.getSignature().getDeclaringType().getSimpleName();
+                event.method = joinPoint.getSignature().getName();
+                event.commit();
+            }
+        }
+    }
+
+    private static void describe(AppEvent event) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        event.describe(authentication == null ? null : authentication.getName(),
+                authentication == null ? null : authentication.getAuthorities(), currentEndpoint());
+    }
+
+    static String currentEndpoint() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        return endpoint(((ServletRequestAttributes) attributes).getRequest());
+    }
+
+    public static String endpoint(HttpServletRequest request) {
+        return request.getMethod() + " " + RequestPaths.pathWithinApplication(request);
+    }
+}
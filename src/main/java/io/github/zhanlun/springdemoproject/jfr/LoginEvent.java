@@ -0,0 +1,18 @@
+package io.github.zhanlun.springdemoproject.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Password check of a login, including the wait for a hashing thread.
+ */
+@Name("io.github.zhanlun.springdemoproject.Login")
+@Label("Login")
+@Category({"Spring Demo Project", "Security"})
+@Threshold("100 ms")
+public class LoginEvent extends AppEvent {
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,18 @@
+package io.github.zhanlun.springdemoproject.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("io.github.zhanlun.springdemoproject.Repository")
+@Label("Repository Call")
+@Category({"Spring Demo Project", "Persistence"})
+@Threshold("5 ms")
+public class RepositoryEvent extends AppEvent {
+    @Label("Repository")
+    public String repository;
+
+    @Label("Method")
+    public String method;
+}
@@ -0,0 +1,15 @@
+package io.github.zhanlun.springdemoproject.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("io.github.zhanlun.springdemoproject.TokenVerification")
+@Label("Token Verification")
+@Category({"Spring Demo Project", "Security"})
+@Threshold("1 ms")
+public class TokenVerificationEvent extends AppEvent {
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,15 @@
+package io.github.zhanlun.springdemoproject.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("io.github.zhanlun.springdemoproject.UserService")
+@Label("User Service Call")
+@Category({"Spring Demo Project", "Service"})
+@Threshold("5 ms")
+public class UserServiceEvent extends AppEvent {
+    @Label("Method")
+    public String method;
+}
@@ -0,0 +1,6 @@
+package io.github.zhanlun.springdemoproject.persistence;
+
+public class PersistenceSettingsDto {
+    public Boolean enabled;
+    public Long slowQueryThresholdMillis;
+}
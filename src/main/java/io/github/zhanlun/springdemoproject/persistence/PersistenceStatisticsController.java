@@ -0,0 +1,32 @@
+package io.github.zhanlun.springdemoproject.persistence;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/admin/persistence")
+public class PersistenceStatisticsController {
+    @Autowired
+    private PersistenceStatisticsService persistenceStatisticsService;
+
+    @GetMapping(path = "/statistics")
+    @PreAuthorize("hasAnyRole('ROLE_ADMIN')")
+    public ResponseEntity<PersistenceStatisticsDto> getStatistics() {
+        return ResponseEntity.ok().body(persistenceStatisticsService.getStatistics());
+    }
+
+    @PutMapping(path = "/statistics")
+    @PreAuthorize("hasAnyRole('ROLE_ADMIN')")
+    public ResponseEntity<PersistenceStatisticsDto> updateSettings(@RequestBody PersistenceSettingsDto settings) {
+        return ResponseEntity.ok().body(persistenceStatisticsService.updateSettings(settings));
+    }
+
+    @DeleteMapping(path = "/statistics")
+    @PreAuthorize("hasAnyRole('ROLE_ADMIN')")
+    public ResponseEntity<?> clearStatistics() {
+        persistenceStatisticsService.clear();
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.zhanlun.springdemoproject.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PersistenceStatisticsDto {
+    public boolean enabled;
+    public long slowQueryThresholdMillis;
+    public long sessionsOpened;
+    public long prepareStatementCount;
+    public long queryExecutionCount;
+    public String slowestQuery;
+    public long slowestQueryMillis;
+    public List<Query> queries = new ArrayList<>();
+    public List<Fetched> entities = new ArrayList<>();
+    public List<Fetched> collections = new ArrayList<>();
+    public List<SlowQueryLog.SlowQuery> slowQueries = new ArrayList<>();
+
+    public static class Query {
+        public String query;
+        public long executionCount;
+        public long maxMillis;
+        public long meanMillis;
+        public long rowCount;
+
+        public Query() {
+        }
+
+        public Query(String query, long executionCount, long maxMillis, long meanMillis, long rowCount) {
+            this.query = query;
+            this.executionCount = executionCount;
+            this.maxMillis = maxMillis;
+            this.meanMillis = meanMillis;
+            this.rowCount = rowCount;
+        }
+    }
+
+    /**
+     * Loads of an entity or collection. A fetch is a load that needed its own
+     * select, so fetches growing with the number of rows read point at N+1.
+     */
+    public static class Fetched {
+        public String name;
+        public long loadCount;
+        public long fetchCount;
+
+        public Fetched() {
+        }
+
+        public Fetched(String name, long loadCount, long fetchCount) {
+            this.name = name;
+            this.loadCount = loadCount;
+            this.fetchCount = fetchCount;
+        }
+    }
+}
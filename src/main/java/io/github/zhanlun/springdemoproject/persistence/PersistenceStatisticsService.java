@@ -0,0 +1,77 @@
+package io.github.zhanlun.springdemoproject.persistence;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CollectionStatistics;
+import org.hibernate.stat.EntityStatistics;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Comparator;
+
+/**
+ * Hibernate statistics that can be switched on and off while the
+ * application runs. Collection costs a little on every query, so it starts
+ * disabled unless {@code app.persistence.statistics.enabled} is set.
+ */
+@Service
+public class PersistenceStatisticsService {
+    private final Statistics statistics;
+    private final SlowQueryLog slowQueryLog;
+
+    @Autowired
+    public PersistenceStatisticsService(EntityManagerFactory entityManagerFactory, SlowQueryLog slowQueryLog,
+                                        @Value("${app.persistence.statistics.enabled:false}") boolean enabled) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.slowQueryLog = slowQueryLog;
+        statistics.setStatisticsEnabled(enabled);
+    }
+
+    public PersistenceStatisticsDto getStatistics() {
+        PersistenceStatisticsDto dto = new PersistenceStatisticsDto();
+        dto.enabled = statistics.isStatisticsEnabled();
+        dto.slowQueryThresholdMillis = slowQueryLog.getThresholdMillis();
+        dto.sessionsOpened = statistics.getSessionOpenCount();
+        dto.prepareStatementCount = statistics.getPrepareStatementCount();
+        dto.queryExecutionCount = statistics.getQueryExecutionCount();
+        dto.slowestQuery = statistics.getQueryExecutionMaxTimeQueryString();
+        dto.slowestQueryMillis = statistics.getQueryExecutionMaxTime();
+        for (String query : statistics.getQueries()) {
+            QueryStatistics queryStatistics = statistics.getQueryStatistics(query);
+            dto.queries.add(new PersistenceStatisticsDto.Query(query, queryStatistics.getExecutionCount(),
+                    queryStatistics.getExecutionMaxTime(), queryStatistics.getExecutionAvgTime(),
+                    queryStatistics.getExecutionRowCount()));
+        }
+        dto.queries.sort(Comparator.comparingLong((PersistenceStatisticsDto.Query q) -> q.executionCount).reversed());
+        for (String entityName : statistics.getEntityNames()) {
+            EntityStatistics entityStatistics = statistics.getEntityStatistics(entityName);
+            dto.entities.add(new PersistenceStatisticsDto.Fetched(entityName,
+                    entityStatistics.getLoadCount(), entityStatistics.getFetchCount()));
+        }
+        for (String role : statistics.getCollectionRoleNames()) {
+            CollectionStatistics collectionStatistics = statistics.getCollectionStatistics(role);
+            dto.collections.add(new PersistenceStatisticsDto.Fetched(role,
+                    collectionStatistics.getLoadCount(), collectionStatistics.getFetchCount()));
+        }
+        dto.slowQueries = slowQueryLog.getRecent();
+        return dto;
+    }
+
+    public PersistenceStatisticsDto updateSettings(PersistenceSettingsDto settings) {
+        if (settings.enabled != null) {
+            statistics.setStatisticsEnabled(settings.enabled);
+        }
+        if (settings.slowQueryThresholdMillis != null) {
+            slowQueryLog.setThresholdMillis(settings.slowQueryThresholdMillis);
+        }
+        return getStatistics();
+    }
+
+    public void clear() {
+        statistics.clear();
+        slowQueryLog.clear();
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.zhanlun.springdemoproject.persistence;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hibernate second-level and query cache on in-process Caffeine caches.
+ * Every region is created here with its own bounds, read from
+ * {@code app.persistence.cache.<region>.max-size} and {@code .ttl}, and
+ * Hibernate refuses to start if an entity asks for a region that is not
+ * listed. Each region reports hits, misses and a hit ratio to Micrometer.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.persistence.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class SecondLevelCacheConfig {
+    public static final String USER_REGION = "app-user";
+    public static final String USER_ROLES_REGION = "app-user-roles";
+    public static final String ROLE_REGION = "app-role";
+    public static final String USER_QUERY_REGION = "app-user-queries";
+
+    private static final String DEFAULT_QUERY_REGION = "default-query-results-region";
+    // query results are only trusted while the timestamps of their tables are known, so this one is never bounded
+    private static final String TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    private static final List<String> REGIONS = List.of(USER_REGION, USER_ROLES_REGION, ROLE_REGION,
+            USER_QUERY_REGION, DEFAULT_QUERY_REGION);
+
+    // test contexts each get their own manager, since the provider hands out one per URI
+    private static final AtomicInteger managers = new AtomicInteger();
+
+    @Bean(destroyMethod = "close")
+    CacheManager secondLevelCacheManager(Environment environment) {
+        URI uri = URI.create("spring-demo-project-" + managers.incrementAndGet());
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(uri, getClass().getClassLoader());
+        for (String region : REGIONS) {
+            long maxSize = environment.getProperty("app.persistence.cache." + region + ".max-size", Long.class, 10_000L);
+            Duration ttl = environment.getProperty("app.persistence.cache." + region + ".ttl", Duration.class, Duration.ofMinutes(10));
+            cacheManager.createCache(region, configuration(OptionalLong.of(maxSize), OptionalLong.of(ttl.toNanos())));
+        }
+        cacheManager.createCache(TIMESTAMPS_REGION, configuration(OptionalLong.empty(), OptionalLong.empty()));
+        return cacheManager;
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer secondLevelCache(CacheManager secondLevelCacheManager) {
+        return properties -> {
+            properties.put("hibernate.cache.use_second_level_cache", "true");
+            properties.put("hibernate.cache.use_query_cache", "true");
+            properties.put("hibernate.cache.region.factory_class", "jcache");
+            properties.put("hibernate.javax.cache.cache_manager", secondLevelCacheManager);
+            properties.put("hibernate.javax.cache.missing_cache_strategy", "fail");
+        };
+    }
+
+    @Bean
+    SecondLevelCacheMetrics secondLevelCacheMetrics(CacheManager secondLevelCacheManager, MeterRegistry meterRegistry) {
+        return new SecondLevelCacheMetrics(secondLevelCacheManager, meterRegistry);
+    }
+
+    private static CaffeineConfiguration<Object, Object> configuration(OptionalLong maxSize, OptionalLong ttlNanos) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(maxSize);
+        configuration.setExpireAfterWrite(ttlNanos);
+        // Hibernate only stores immutable, disassembled state, so copying on every get and put buys nothing
+        configuration.setStoreByValue(false);
+        configuration.setStatisticsEnabled(true);
+        return configuration;
+    }
+
+    static class SecondLevelCacheMetrics {
+        SecondLevelCacheMetrics(CacheManager cacheManager, MeterRegistry meterRegistry) {
+            for (String region : cacheManager.getCacheNames()) {
+                Cache<Object, Object> cache = cacheManager.getCache(region);
+                JCacheMetrics.monitor(meterRegistry, cache);
+                FunctionCounter hits = meterRegistry.get("cache.gets").tag("cache", region).tag("result", "hit").functionCounter();
+                FunctionCounter misses = meterRegistry.get("cache.gets").tag("cache", region).tag("result", "miss").functionCounter();
+                Gauge.builder("cache.hit.ratio", () -> hitRatio(hits.count(), misses.count()))
+                        .description("Share of second-level cache lookups answered without the database")
+                        .tag("cache", region)
+                        .register(meterRegistry);
+            }
+        }
+
+        private static double hitRatio(double hits, double misses) {
+            double gets = hits + misses;
+            return gets == 0 ? Double.NaN : hits / gets;
+        }
+    }
+}
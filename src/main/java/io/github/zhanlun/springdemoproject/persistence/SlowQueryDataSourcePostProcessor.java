@@ -0,0 +1,34 @@
+package io.github.zhanlun.springdemoproject.persistence;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps the application's pool in a {@link SlowQueryDataSource}. The pool
+ * stays reachable through {@code unwrap}, so Hikari metrics still see it.
+ * Every statement then goes through a proxy, so nothing is wrapped unless
+ * {@code app.persistence.slow-query.enabled=true}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.persistence.slow-query.enabled", havingValue = "true")
+public class SlowQueryDataSourcePostProcessor implements BeanPostProcessor {
+    private final ObjectProvider<SlowQueryLog> slowQueryLog;
+
+    @Autowired
+    public SlowQueryDataSourcePostProcessor(ObjectProvider<SlowQueryLog> slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource && !(bean instanceof SlowQueryDataSource)) {
+            return new SlowQueryDataSource((DataSource) bean, slowQueryLog.getObject());
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.zhanlun.springdemoproject.persistence;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes JDBC statements slower than the threshold to the
+ * {@code slow-query} logger as one JSON object per line, with the SQL and
+ * the types of its bind parameters but never their values. The most recent
+ * entries are also kept for the admin endpoint. The threshold can be
+ * changed at runtime; a negative threshold turns the log off. Statements are
+ * only captured while {@code app.persistence.slow-query.enabled} is set.
+ */
+@Component
+public class SlowQueryLog {
+    private static final Logger log = LoggerFactory.getLogger("slow-query");
+
+    private final ObjectMapper objectMapper;
+    private final int recentCapacity;
+    private final Deque<SlowQuery> recent = new ArrayDeque<>();
+    private volatile long thresholdNanos;
+
+    @Autowired
+    public SlowQueryLog(ObjectMapper objectMapper,
+                        @Value("${app.persistence.slow-query.threshold-millis:200}") long thresholdMillis,
+                        @Value("${app.persistence.slow-query.recent:50}") int recentCapacity) {
+        this.objectMapper = objectMapper;
+        this.recentCapacity = recentCapacity;
+        setThresholdMillis(thresholdMillis);
+    }
+
+    public long getThresholdMillis() {
+        return thresholdNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    public void setThresholdMillis(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    boolean isSlow(long durationNanos) {
+        long threshold = thresholdNanos;
+        return threshold >= 0 && durationNanos >= threshold;
+    }
+
+    void record(String sql, List<String> parameterTypes, int batchSize, long durationNanos) {
+        SlowQuery slowQuery = new SlowQuery(Instant.now().toString(), durationNanos / 1_000_000.0, sql,
+                new ArrayList<>(parameterTypes), batchSize);
+        synchronized (recent) {
+            if (recent.size() == recentCapacity) {
+                recent.removeFirst();
+            }
+            recent.addLast(slowQuery);
+        }
+        if (log.isWarnEnabled()) {
+            try {
+                log.warn(objectMapper.writeValueAsString(slowQuery));
+            } catch (JsonProcessingException e) {
+                log.warn("Slow query ({} ms): {}", slowQuery.durationMillis, sql);
+            }
+        }
+    }
+
+    public List<SlowQuery> getRecent() {
+        synchronized (recent) {
+            return new ArrayList<>(recent);
+        }
+    }
+
+    public void clear() {
+        synchronized (recent) {
+            recent.clear();
+        }
+    }
+
+    public static class SlowQuery {
+        public String at;
+        public double durationMillis;
+        public String sql;
+        public List<String> parameters;
+        public int batchSize;
+
+        public SlowQuery() {
+        }
+
+        public SlowQuery(String at, double durationMillis, String sql, List<String> parameters, int batchSize) {
+            this.at = at;
+            this.durationMillis = durationMillis;
+            this.sql = sql;
+            this.parameters = parameters;
+            this.batchSize = batchSize;
+        }
+    }
+}
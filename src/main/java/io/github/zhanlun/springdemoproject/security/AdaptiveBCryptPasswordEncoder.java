@@ -0,0 +1,109 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * BCrypt encoder with a target work factor, either configured or picked at
+ * startup by {@link #calibrateStrength} measuring the current hardware. Stored
+ * hashes with any other cost report {@link #upgradeEncoding(String)} so they
+ * migrate to the target on the next login. The target is never below the
+ * configured floor.
+ */
+public class AdaptiveBCryptPasswordEncoder implements PasswordEncoder {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveBCryptPasswordEncoder.class);
+    private static final int SAMPLES = 3;
+
+    private final BCryptPasswordEncoder delegate;
+    private final int strength;
+    private final int minStrength;
+
+    /**
+     * @param strength    target cost for new hashes and for re-hashing on login
+     * @param minStrength floor the target must not go below
+     */
+    public AdaptiveBCryptPasswordEncoder(int strength, int minStrength) {
+        if (minStrength > strength) {
+            throw new IllegalArgumentException("BCrypt min strength " + minStrength + " is above strength " + strength);
+        }
+        this.delegate = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+        this.minStrength = minStrength;
+    }
+
+    /**
+     * Highest cost whose encode time on this host stays within the target.
+     *
+     * @param targetMillis desired time for a single encode
+     * @param minStrength  floor that is used even if the hardware is too slow for the target
+     * @param maxStrength  ceiling for very fast hardware
+     */
+    public static int calibrateStrength(long targetMillis, int minStrength, int maxStrength) {
+        if (minStrength > maxStrength) {
+            throw new IllegalArgumentException("BCrypt min strength " + minStrength + " is above max strength " + maxStrength);
+        }
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(minStrength);
+        probe.encode("calibration");
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            probe.encode("calibration");
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+
+        // every extra BCrypt round doubles the cost
+        int strength = minStrength;
+        double estimatedMillis = bestNanos / 1_000_000.0;
+        while (strength < maxStrength && estimatedMillis * 2 <= targetMillis) {
+            estimatedMillis *= 2;
+            strength++;
+        }
+        log.info("BCrypt calibrated to strength {} (~{} ms, target {} ms)", strength, Math.round(estimatedMillis), targetMillis);
+        return strength;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    public int getMinStrength() {
+        return minStrength;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return delegate.matches(rawPassword, encodedPassword);
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        int cost = costOf(encodedPassword);
+        return cost > 0 && cost != strength;
+    }
+
+    /**
+     * Read the cost from a hash in the {@code $2a$10$...} format, or -1 if it is not BCrypt.
+     */
+    static int costOf(String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(0) != '$') {
+            return -1;
+        }
+        int costStart = encodedPassword.indexOf('$', 1) + 1;
+        if (costStart <= 0 || costStart + 2 >= encodedPassword.length() || encodedPassword.charAt(costStart + 2) != '$') {
+            return -1;
+        }
+        char tens = encodedPassword.charAt(costStart);
+        char ones = encodedPassword.charAt(costStart + 1);
+        if (!Character.isDigit(tens) || !Character.isDigit(ones)) {
+            return -1;
+        }
+        return (tens - '0') * 10 + (ones - '0');
+    }
+}
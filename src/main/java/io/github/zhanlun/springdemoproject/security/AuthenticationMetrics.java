@@ -0,0 +1,73 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the login and bearer token filters. They are registered once
+ * with fixed tag values so the filters only look up a field per request and
+ * no user or client data ends up in a tag.
+ */
+@Component
+public class AuthenticationMetrics {
+    public enum LoginPhase {
+        PARSE, PASSWORD, TOKEN
+    }
+
+    public enum LoginOutcome {
+        SUCCESS, BAD_CREDENTIALS, INVALID_REQUEST, RATE_LIMITED, OVERLOADED
+    }
+
+    private final Map<LoginPhase, Timer> loginPhaseTimers = new EnumMap<>(LoginPhase.class);
+    private final Map<LoginOutcome, Counter> loginCounters = new EnumMap<>(LoginOutcome.class);
+    private final Timer verificationSuccessTimer;
+    private final Timer verificationFailureTimer;
+
+    @Autowired
+    public AuthenticationMetrics(MeterRegistry meterRegistry) {
+        for (LoginPhase phase : LoginPhase.values()) {
+            loginPhaseTimers.put(phase, Timer.builder("auth.login.phase")
+                    .description("Time spent in each phase of a login request")
+                    .tag("phase", tagValue(phase))
+                    .register(meterRegistry));
+        }
+        for (LoginOutcome outcome : LoginOutcome.values()) {
+            loginCounters.put(outcome, Counter.builder("auth.login")
+                    .description("Login attempts by outcome")
+                    .tag("outcome", tagValue(outcome))
+                    .register(meterRegistry));
+        }
+        this.verificationSuccessTimer = verificationTimer(meterRegistry, "success");
+        this.verificationFailureTimer = verificationTimer(meterRegistry, "failure");
+    }
+
+    public void recordLoginPhase(LoginPhase phase, long startNanos) {
+        loginPhaseTimers.get(phase).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void countLogin(LoginOutcome outcome) {
+        loginCounters.get(outcome).increment();
+    }
+
+    public void recordVerification(boolean success, long startNanos) {
+        (success ? verificationSuccessTimer : verificationFailureTimer).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer verificationTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("auth.token.verification")
+                .description("Time to authenticate a bearer token, including cache hits")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase();
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.*;
+
+/**
+ * Immutable set of {@link RoleAuthority} backed by a bitset of their
+ * ordinals. Membership checks are a map lookup plus a bit test and iteration
+ * hands out the interned instances, so checking roles allocates nothing.
+ * {@link #contains(Object)} matches any {@link GrantedAuthority} by name.
+ */
+public final class AuthoritySet extends AbstractCollection<GrantedAuthority> {
+    public static final AuthoritySet EMPTY = new AuthoritySet(new long[0]);
+
+    private final long[] bits;
+    private final int size;
+
+    private AuthoritySet(long[] bits) {
+        this.bits = bits;
+        int size = 0;
+        for (long word : bits) {
+            size += Long.bitCount(word);
+        }
+        this.size = size;
+    }
+
+    public static AuthoritySet ofNames(String... names) {
+        return ofNames(Arrays.asList(names));
+    }
+
+    public static AuthoritySet ofNames(Iterable<String> names) {
+        long[] bits = new long[0];
+        for (String name : names) {
+            bits = set(bits, RoleAuthority.of(name).getOrdinal());
+        }
+        return bits.length == 0 ? EMPTY : new AuthoritySet(bits);
+    }
+
+    public static AuthoritySet of(Iterable<RoleAuthority> authorities) {
+        long[] bits = new long[0];
+        for (RoleAuthority authority : authorities) {
+            bits = set(bits, authority.getOrdinal());
+        }
+        return bits.length == 0 ? EMPTY : new AuthoritySet(bits);
+    }
+
+    public static AuthoritySet copyOf(Collection<? extends GrantedAuthority> authorities) {
+        if (authorities instanceof AuthoritySet) {
+            return (AuthoritySet) authorities;
+        }
+        List<String> names = new ArrayList<>(authorities.size());
+        authorities.forEach(authority -> names.add(authority.getAuthority()));
+        return ofNames(names);
+    }
+
+    /**
+     * Check an authority by name, with a bit test when the collection is an
+     * {@code AuthoritySet} and a linear scan otherwise.
+     */
+    public static boolean hasAuthority(Collection<? extends GrantedAuthority> authorities, String name) {
+        if (authorities instanceof AuthoritySet) {
+            return ((AuthoritySet) authorities).hasAuthority(name);
+        }
+        for (GrantedAuthority authority : authorities) {
+            if (name.equals(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasAuthority(String name) {
+        return name != null && test(RoleAuthority.ordinalOf(name));
+    }
+
+    public boolean hasAnyAuthority(String... names) {
+        for (String name : names) {
+            if (hasAuthority(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean test(int ordinal) {
+        int word = ordinal >>> 6;
+        return ordinal >= 0 && word < bits.length && (bits[word] & (1L << ordinal)) != 0;
+    }
+
+    private static long[] set(long[] bits, int ordinal) {
+        int word = ordinal >>> 6;
+        if (word >= bits.length) {
+            bits = Arrays.copyOf(bits, word + 1);
+        }
+        bits[word] |= 1L << ordinal;
+        return bits;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof GrantedAuthority && hasAuthority(((GrantedAuthority) o).getAuthority());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<GrantedAuthority> iterator() {
+        return new Iterator<>() {
+            private int word;
+            private long remaining = bits.length == 0 ? 0 : bits[0];
+
+            @Override
+            public boolean hasNext() {
+                while (remaining == 0 && word + 1 < bits.length) {
+                    remaining = bits[++word];
+                }
+                return remaining != 0;
+            }
+
+            @Override
+            public GrantedAuthority next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int ordinal = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                return RoleAuthority.byOrdinal(ordinal);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(bits, ((AuthoritySet) o).bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bits);
+    }
+}
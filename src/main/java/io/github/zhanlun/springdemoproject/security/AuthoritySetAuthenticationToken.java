@@ -0,0 +1,26 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Authenticated token that hands out its {@link AuthoritySet} as is, instead
+ * of the list copy {@link UsernamePasswordAuthenticationToken} would make, so
+ * role checks downstream can use bit tests.
+ */
+public class AuthoritySetAuthenticationToken extends UsernamePasswordAuthenticationToken {
+    private final AuthoritySet authorities;
+
+    public AuthoritySetAuthenticationToken(Object principal, AuthoritySet authorities) {
+        super(principal, null, Collections.emptyList());
+        this.authorities = authorities;
+    }
+
+    @Override
+    public Collection<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+}
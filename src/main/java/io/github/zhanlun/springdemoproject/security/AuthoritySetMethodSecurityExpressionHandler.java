@@ -0,0 +1,23 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+/**
+ * Picked up by global method security as the handler for
+ * {@code @PreAuthorize} and friends.
+ */
+@Component
+public class AuthoritySetMethodSecurityExpressionHandler extends DefaultMethodSecurityExpressionHandler {
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+
+    @Override
+    protected MethodSecurityExpressionOperations createSecurityExpressionRoot(Authentication authentication, MethodInvocation invocation) {
+        return new AuthoritySetSecurityExpressionRoot(authentication, invocation.getThis(), trustResolver, getPermissionEvaluator());
+    }
+}
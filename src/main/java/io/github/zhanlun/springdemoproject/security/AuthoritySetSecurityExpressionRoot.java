@@ -0,0 +1,145 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.core.Authentication;
+
+import java.io.Serializable;
+
+/**
+ * Expression root for method security whose role checks go through
+ * {@link AuthoritySet#hasAuthority(java.util.Collection, String)} instead of
+ * building a set of authority names for every invocation, as
+ * {@link org.springframework.security.access.expression.SecurityExpressionRoot} does.
+ */
+public class AuthoritySetSecurityExpressionRoot implements MethodSecurityExpressionOperations {
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final Authentication authentication;
+    private final Object target;
+    private final AuthenticationTrustResolver trustResolver;
+    private final PermissionEvaluator permissionEvaluator;
+    private Object filterObject;
+    private Object returnObject;
+
+    public AuthoritySetSecurityExpressionRoot(Authentication authentication, Object target,
+                                              AuthenticationTrustResolver trustResolver,
+                                              PermissionEvaluator permissionEvaluator) {
+        if (authentication == null) {
+            throw new IllegalArgumentException("Authentication object cannot be null");
+        }
+        this.authentication = authentication;
+        this.target = target;
+        this.trustResolver = trustResolver;
+        this.permissionEvaluator = permissionEvaluator;
+    }
+
+    @Override
+    public Authentication getAuthentication() {
+        return authentication;
+    }
+
+    public Object getPrincipal() {
+        return authentication.getPrincipal();
+    }
+
+    @Override
+    public boolean hasAuthority(String authority) {
+        return AuthoritySet.hasAuthority(authentication.getAuthorities(), authority);
+    }
+
+    @Override
+    public boolean hasAnyAuthority(String... authorities) {
+        for (String authority : authorities) {
+            if (hasAuthority(authority)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasRole(String role) {
+        return hasAuthority(withRolePrefix(role));
+    }
+
+    @Override
+    public boolean hasAnyRole(String... roles) {
+        for (String role : roles) {
+            if (hasRole(role)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String withRolePrefix(String role) {
+        return role == null || role.startsWith(ROLE_PREFIX) ? role : ROLE_PREFIX + role;
+    }
+
+    @Override
+    public boolean permitAll() {
+        return true;
+    }
+
+    @Override
+    public boolean denyAll() {
+        return false;
+    }
+
+    @Override
+    public boolean isAnonymous() {
+        return trustResolver.isAnonymous(authentication);
+    }
+
+    @Override
+    public boolean isAuthenticated() {
+        return !isAnonymous();
+    }
+
+    @Override
+    public boolean isRememberMe() {
+        return trustResolver.isRememberMe(authentication);
+    }
+
+    @Override
+    public boolean isFullyAuthenticated() {
+        return !trustResolver.isAnonymous(authentication) && !trustResolver.isRememberMe(authentication);
+    }
+
+    @Override
+    public boolean hasPermission(Object target, Object permission) {
+        return permissionEvaluator.hasPermission(authentication, target, permission);
+    }
+
+    @Override
+    public boolean hasPermission(Object targetId, String targetType, Object permission) {
+        return permissionEvaluator.hasPermission(authentication, (Serializable) targetId, targetType, permission);
+    }
+
+    @Override
+    public void setFilterObject(Object filterObject) {
+        this.filterObject = filterObject;
+    }
+
+    @Override
+    public Object getFilterObject() {
+        return filterObject;
+    }
+
+    @Override
+    public void setReturnObject(Object returnObject) {
+        this.returnObject = returnObject;
+    }
+
+    @Override
+    public Object getReturnObject() {
+        return returnObject;
+    }
+
+    @Override
+    public Object getThis() {
+        return target;
+    }
+}
@@ -1,16 +1,20 @@
 package io.github.zhanlun.springdemoproject.security;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.algorithms.Algorithm;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.github.zhanlun.springdemoproject.usermgmt.user.AppUser;
+import io.github.zhanlun.springdemoproject.security.AuthenticationMetrics.LoginOutcome;
+import io.github.zhanlun.springdemoproject.security.AuthenticationMetrics.LoginPhase;
+import io.github.zhanlun.springdemoproject.jfr.FlightRecorderAspect;
+import io.github.zhanlun.springdemoproject.jfr.LoginEvent;
+import io.github.zhanlun.springdemoproject.timing.ServerTiming;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUserDetails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 import javax.servlet.FilterChain;
@@ -18,19 +22,30 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.stream.Collectors;
 
-import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
 
 public class CustomAuthenticationFilter extends UsernamePasswordAuthenticationFilter {
+    private static final Logger log = LoggerFactory.getLogger(CustomAuthenticationFilter.class);
+
     private final AuthenticationManager authenticationManager;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final TokenService tokenService;
+    private final LoginCredentialsReader loginCredentialsReader;
+    private final RateLimitService rateLimitService;
+    private final AuthenticationMetrics metrics;
 
     @Autowired
-    public CustomAuthenticationFilter(AuthenticationManager authenticationManager) {
+    public CustomAuthenticationFilter(AuthenticationManager authenticationManager, PasswordHashingExecutor passwordHashingExecutor,
+                                      TokenService tokenService, LoginCredentialsReader loginCredentialsReader,
+                                      RateLimitService rateLimitService, AuthenticationMetrics metrics) {
         this.authenticationManager = authenticationManager;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.tokenService = tokenService;
+        this.loginCredentialsReader = loginCredentialsReader;
+        this.rateLimitService = rateLimitService;
+        this.metrics = metrics;
     }
 
     @Override
@@ -39,43 +54,91 @@ public class CustomAuthenticationFilter extends UsernamePasswordAuthenticationFi
         String password = "";
 
         if ("POST".equalsIgnoreCase(request.getMethod())) {
+            long parseStart = System.nanoTime();
             try {
-                String collect = request.getReader().lines().collect(Collectors.joining(System.lineSeparator()));
-                System.out.println(collect);
-                ObjectMapper objectMapper = new ObjectMapper();
-                AppUser appUser = objectMapper.readValue(collect, AppUser.class);
-                username = appUser.getUsername();
-                password = appUser.getPassword();
+                LoginCredentials credentials = loginCredentialsReader.read(request.getInputStream(), request.getContentLengthLong());
+                metrics.recordLoginPhase(LoginPhase.PARSE, parseStart);
+                username = credentials.getUsername();
+                password = credentials.getPassword();
+                rateLimitService.checkUsername(RateLimitService.Endpoint.LOGIN, username);
+            } catch (InvalidLoginRequestException exception) {
+                metrics.recordLoginPhase(LoginPhase.PARSE, parseStart);
+                metrics.countLogin(LoginOutcome.INVALID_REQUEST);
+                rejectRequest(response, exception.getStatus(), exception.getMessage(), 0);
+                return null;
+            } catch (RateLimitExceededException exception) {
+                metrics.countLogin(LoginOutcome.RATE_LIMITED);
+                rejectRequest(response, TOO_MANY_REQUESTS, exception.getMessage(), exception.getRetryAfterSeconds());
+                return null;
             } catch (IOException e) {
-                e.printStackTrace();
+                log.warn("Could not read login request body", e);
             }
         }
 
         UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(username, password);
-        return authenticationManager.authenticate(authenticationToken);
+        long passwordStart = System.nanoTime();
+        LoginEvent event = new LoginEvent();
+        event.begin();
+        try {
+            Authentication authentication = passwordHashingExecutor.call(() -> authenticationManager.authenticate(authenticationToken));
+            passwordChecked(request, event, username, authentication, passwordStart);
+            return authentication;
+        } catch (AuthenticationException exception) {
+            passwordChecked(request, event, username, null, passwordStart);
+            throw exception;
+        } catch (PasswordHashingRejectedException exception) {
+            metrics.countLogin(LoginOutcome.OVERLOADED);
+            rejectRequest(response, SERVICE_UNAVAILABLE, exception.getMessage(), exception.getRetryAfterSeconds());
+            return null;
+        }
+    }
+
+    private void passwordChecked(HttpServletRequest request, LoginEvent event, String username, Authentication authentication, long startNanos) {
+        metrics.recordLoginPhase(LoginPhase.PASSWORD, startNanos);
+        ServerTiming.record(ServerTiming.Phase.AUTH, startNanos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.success = authentication != null;
+            event.describe(username, authentication == null ? null : authentication.getAuthorities(), FlightRecorderAspect.endpoint(request));
+            event.commit();
+        }
+    }
+
+    private void rejectRequest(HttpServletResponse response, HttpStatus status, String message, long retryAfterSeconds) {
+        try {
+            if (retryAfterSeconds > 0) {
+                tokenService.writeError(response, status, message, retryAfterSeconds);
+            } else {
+                tokenService.writeError(response, status, message);
+            }
+        } catch (IOException e) {
+            log.warn("Could not write login error response", e);
+        }
     }
 
     @Override
     protected void successfulAuthentication(HttpServletRequest request, HttpServletResponse response, FilterChain chain, Authentication authResult) throws IOException, ServletException {
-        User user = (User) authResult.getPrincipal();
-        Algorithm algorithm = Algorithm.HMAC256("secret".getBytes());
-        String access_token = JWT.create()
-                .withSubject(user.getUsername())
-                .withExpiresAt(new Date(System.currentTimeMillis() + 60 * 1000))
-                .withIssuer(request.getRequestURL().toString())
-                .withClaim("roles", user.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList()))
-                .sign(algorithm);
-
-        String refresh_token = JWT.create()
-                .withSubject(user.getUsername())
-                .withExpiresAt(new Date(System.currentTimeMillis() + 30 * 60 * 1000))
-                .withIssuer(request.getRequestURL().toString())
-                .sign(algorithm);
+        long tokenStart = System.nanoTime();
+        UserDetails user = (UserDetails) authResult.getPrincipal();
+        String issuer = request.getRequestURL().toString();
+        String access_token = tokenService.createAccessToken(user.getUsername(), user.getAuthorities(), issuer);
+        String refresh_token;
+        if (user instanceof AppUserDetails) {
+            AppUserDetails details = (AppUserDetails) user;
+            refresh_token = tokenService.createRefreshToken(user.getUsername(), details.getId(), details.getSecurityVersion(),
+                    user.getAuthorities(), issuer);
+        } else {
+            refresh_token = tokenService.createRefreshToken(user.getUsername(), null, SecurityVersionTable.STALE,
+                    user.getAuthorities(), issuer);
+        }
+        tokenService.writeTokens(response, access_token, refresh_token);
+        metrics.recordLoginPhase(LoginPhase.TOKEN, tokenStart);
+        metrics.countLogin(LoginOutcome.SUCCESS);
+    }
 
-        Map<String, String> tokens = new HashMap<>();
-        tokens.put("access_token", access_token);
-        tokens.put("refresh_token", refresh_token);
-        response.setContentType(APPLICATION_JSON_VALUE);
-        new ObjectMapper().writeValue(response.getOutputStream(), tokens);
+    @Override
+    protected void unsuccessfulAuthentication(HttpServletRequest request, HttpServletResponse response, AuthenticationException failed) throws IOException, ServletException {
+        metrics.countLogin(LoginOutcome.BAD_CREDENTIALS);
+        super.unsuccessfulAuthentication(request, response, failed);
     }
 }
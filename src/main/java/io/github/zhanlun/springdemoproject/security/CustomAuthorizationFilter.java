@@ -1,12 +1,11 @@
 package io.github.zhanlun.springdemoproject.security;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.JWTVerifier;
-import com.auth0.jwt.algorithms.Algorithm;
-import com.auth0.jwt.interfaces.DecodedJWT;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.zhanlun.springdemoproject.jfr.FlightRecorderAspect;
+import io.github.zhanlun.springdemoproject.jfr.TokenVerificationEvent;
+import io.github.zhanlun.springdemoproject.timing.ServerTiming;
+import io.github.zhanlun.springdemoproject.util.RequestPaths;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -15,45 +14,43 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
-import static java.util.Arrays.stream;
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 import static org.springframework.http.HttpStatus.FORBIDDEN;
-import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
 public class CustomAuthorizationFilter extends OncePerRequestFilter {
+    private final TokenService tokenService;
+    private final AuthenticationMetrics metrics;
+
+    public CustomAuthorizationFilter(TokenService tokenService, AuthenticationMetrics metrics) {
+        this.tokenService = tokenService;
+        this.metrics = metrics;
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
-        if (request.getServletPath().equals("/api/login") ||
-                request.getServletPath().equals("/api/refreshToken")) {
+        String path = RequestPaths.pathWithinApplication(request);
+        if (path.equals("/api/login") || path.equals("/api/refreshToken")) {
             filterChain.doFilter(request, response);
         } else {
             String authorizationHeader = request.getHeader(AUTHORIZATION);
             if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
+                long verificationStart = System.nanoTime();
+                TokenVerificationEvent event = new TokenVerificationEvent();
+                event.begin();
+                boolean verified = false;
                 try {
                     String token = authorizationHeader.substring("Bearer ".length());
-                    final String secretKey = "secret";
-                    Algorithm algorithm = Algorithm.HMAC256(secretKey.getBytes());
-                    JWTVerifier verifier = JWT.require(algorithm).build();
-                    DecodedJWT decodedJWT = verifier.verify(token);
-                    String username = decodedJWT.getSubject();
-                    String[] roles = decodedJWT.getClaim("roles").asArray(String.class);
-                    Collection<SimpleGrantedAuthority> authorities = new ArrayList<>();
-                    stream(roles).forEach(role -> authorities.add(new SimpleGrantedAuthority(role)));
-                    UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(username, null, authorities);
+                    UsernamePasswordAuthenticationToken authenticationToken = tokenService.authenticate(token);
+                    verified = true;
+                    verificationFinished(request, event, authenticationToken, verificationStart);
                     SecurityContextHolder.getContext().setAuthentication(authenticationToken);
                     filterChain.doFilter(request, response);
                 } catch (Exception exception) {
-                    response.setHeader("error", exception.getMessage());
-                    response.setStatus(FORBIDDEN.value());
-                    Map<String, String> error = new HashMap<>();
-                    error.put("error_message", exception.getMessage());
-                    response.setContentType(APPLICATION_JSON_VALUE);
-                    new ObjectMapper().writeValue(response.getOutputStream(), error);
+                    if (!verified) {
+                        verificationFinished(request, event, null, verificationStart);
+                    }
+                    tokenService.writeError(response, FORBIDDEN, exception.getMessage());
                 }
 
             } else {
@@ -61,4 +58,17 @@ public class CustomAuthorizationFilter extends OncePerRequestFilter {
             }
         }
     }
+
+    private void verificationFinished(HttpServletRequest request, TokenVerificationEvent event, Authentication authentication, long startNanos) {
+        boolean success = authentication != null;
+        metrics.recordVerification(success, startNanos);
+        ServerTiming.record(ServerTiming.Phase.AUTH, startNanos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.success = success;
+            event.describe(success ? authentication.getName() : null, success ? authentication.getAuthorities() : null,
+                    FlightRecorderAspect.endpoint(request));
+            event.commit();
+        }
+    }
 }
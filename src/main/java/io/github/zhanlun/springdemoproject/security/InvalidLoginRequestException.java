@@ -0,0 +1,16 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import org.springframework.http.HttpStatus;
+
+public class InvalidLoginRequestException extends RuntimeException {
+    private final HttpStatus status;
+
+    public InvalidLoginRequestException(HttpStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,22 @@
+package io.github.zhanlun.springdemoproject.security;
+
+/**
+ * Username and password from a login request body.
+ */
+public final class LoginCredentials {
+    private final String username;
+    private final String password;
+
+    public LoginCredentials(String username, String password) {
+        this.username = username;
+        this.password = password;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+}
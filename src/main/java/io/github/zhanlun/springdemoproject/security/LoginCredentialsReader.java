@@ -0,0 +1,111 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.PAYLOAD_TOO_LARGE;
+
+/**
+ * Reads {@code {"username": ..., "password": ...}} straight from the request
+ * stream with a token parser. The body is never buffered as a whole and
+ * reading stops as soon as it goes past the byte limit.
+ */
+@Component
+public class LoginCredentialsReader {
+    private final JsonFactory jsonFactory;
+    private final int maxBodyBytes;
+
+    @Autowired
+    public LoginCredentialsReader(ObjectMapper objectMapper,
+                                  @Value("${app.security.login.max-body-bytes:4096}") int maxBodyBytes) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * @param contentLength declared body length, or -1 if unknown
+     * @throws InvalidLoginRequestException If the body is too large or is not a credentials object
+     */
+    public LoginCredentials read(InputStream body, long contentLength) throws IOException {
+        if (contentLength > maxBodyBytes) {
+            throw new InvalidLoginRequestException(PAYLOAD_TOO_LARGE, "Login request body is too large");
+        }
+        String username = null;
+        String password = null;
+        try (JsonParser parser = jsonFactory.createParser(new LimitedInputStream(body, maxBodyBytes))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw malformed();
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("username".equals(field) && value == JsonToken.VALUE_STRING) {
+                    username = parser.getText();
+                } else if ("password".equals(field) && value == JsonToken.VALUE_STRING) {
+                    password = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT) {
+                throw malformed();
+            }
+        } catch (JsonProcessingException e) {
+            throw malformed();
+        }
+        if (username == null || password == null) {
+            throw malformed();
+        }
+        return new LoginCredentials(username, password);
+    }
+
+    private static InvalidLoginRequestException malformed() {
+        return new InvalidLoginRequestException(BAD_REQUEST, "Login request must be a JSON object with username and password");
+    }
+
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                consumed(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            // read one byte past the limit so an oversized body is noticed
+            int n = super.read(b, off, (int) Math.min(len, remaining + 1));
+            if (n > 0) {
+                consumed(n);
+            }
+            return n;
+        }
+
+        private void consumed(int n) {
+            remaining -= n;
+            if (remaining < 0) {
+                throw new InvalidLoginRequestException(PAYLOAD_TOO_LARGE, "Login request body is too large");
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+import static org.springframework.http.HttpHeaders.RETRY_AFTER;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Answers a full password hashing pool outside the login filter (e.g. when
+ * adding a user) the same way the filter does: 503 with {@code Retry-After}.
+ */
+@RestControllerAdvice
+public class PasswordHashingExceptionHandler {
+    @ExceptionHandler(PasswordHashingRejectedException.class)
+    public ResponseEntity<Map<String, String>> passwordHashingRejected(PasswordHashingRejectedException exception) {
+        return ResponseEntity.status(SERVICE_UNAVAILABLE)
+                .header(RETRY_AFTER, String.valueOf(exception.getRetryAfterSeconds()))
+                .body(Map.of("error_message", exception.getMessage()));
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import io.github.zhanlun.springdemoproject.util.RequestPaths;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
+
+/**
+ * Limits login and refresh requests per client IP before any body parsing or
+ * password hashing happens. Usernames are limited further down, once they are known.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+    private final RateLimitService rateLimitService;
+    private final TokenService tokenService;
+
+    public RateLimitFilter(RateLimitService rateLimitService, TokenService tokenService) {
+        this.rateLimitService = rateLimitService;
+        this.tokenService = tokenService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        String path = RequestPaths.pathWithinApplication(request);
+        RateLimitService.Endpoint endpoint;
+        if (path.equals("/api/login")) {
+            endpoint = RateLimitService.Endpoint.LOGIN;
+        } else if (path.equals("/api/refreshToken")) {
+            endpoint = RateLimitService.Endpoint.REFRESH;
+        } else {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        try {
+            rateLimitService.checkIp(endpoint, request.getRemoteAddr());
+        } catch (RateLimitExceededException exception) {
+            tokenService.writeError(response, TOO_MANY_REQUESTS, exception.getMessage(), exception.getRetryAfterSeconds());
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per client IP and per username limits for the login and refresh endpoints.
+ */
+@Component
+public class RateLimitService {
+    public enum Endpoint {
+        LOGIN, REFRESH
+    }
+
+    private static final int STRIPES = 64;
+
+    private final Limit loginByIp;
+    private final Limit loginByUsername;
+    private final Limit refreshByIp;
+    private final Limit refreshByUsername;
+
+    @Autowired
+    public RateLimitService(@Value("${app.security.rate-limit.login.ip.capacity:20}") int loginIpCapacity,
+                            @Value("${app.security.rate-limit.login.ip.refill-per-second:2}") double loginIpRefill,
+                            @Value("${app.security.rate-limit.login.username.capacity:5}") int loginUsernameCapacity,
+                            @Value("${app.security.rate-limit.login.username.refill-per-second:0.2}") double loginUsernameRefill,
+                            @Value("${app.security.rate-limit.refresh.ip.capacity:60}") int refreshIpCapacity,
+                            @Value("${app.security.rate-limit.refresh.ip.refill-per-second:5}") double refreshIpRefill,
+                            @Value("${app.security.rate-limit.refresh.username.capacity:10}") int refreshUsernameCapacity,
+                            @Value("${app.security.rate-limit.refresh.username.refill-per-second:1}") double refreshUsernameRefill,
+                            @Value("${app.security.rate-limit.max-keys:100000}") int maxKeys,
+                            MeterRegistry meterRegistry) {
+        this.loginByIp = new Limit("login", "ip", new TokenBucketRateLimiter(loginIpCapacity, loginIpRefill, maxKeys, STRIPES), meterRegistry);
+        this.loginByUsername = new Limit("login", "username", new TokenBucketRateLimiter(loginUsernameCapacity, loginUsernameRefill, maxKeys, STRIPES), meterRegistry);
+        this.refreshByIp = new Limit("refresh", "ip", new TokenBucketRateLimiter(refreshIpCapacity, refreshIpRefill, maxKeys, STRIPES), meterRegistry);
+        this.refreshByUsername = new Limit("refresh", "username", new TokenBucketRateLimiter(refreshUsernameCapacity, refreshUsernameRefill, maxKeys, STRIPES), meterRegistry);
+    }
+
+    /**
+     * @throws RateLimitExceededException If the client IP has no requests left
+     */
+    public void checkIp(Endpoint endpoint, String ip) {
+        (endpoint == Endpoint.LOGIN ? loginByIp : refreshByIp).check(ip);
+    }
+
+    /**
+     * @throws RateLimitExceededException If the username has no requests left
+     */
+    public void checkUsername(Endpoint endpoint, String username) {
+        (endpoint == Endpoint.LOGIN ? loginByUsername : refreshByUsername).check(username);
+    }
+
+    private static class Limit {
+        private final TokenBucketRateLimiter limiter;
+        private final Counter allowedCounter;
+        private final Counter rejectedCounter;
+
+        private Limit(String endpoint, String key, TokenBucketRateLimiter limiter, MeterRegistry meterRegistry) {
+            this.limiter = limiter;
+            this.allowedCounter = Counter.builder("rate.limit.allowed")
+                    .description("Requests let through by the rate limiter")
+                    .tags("endpoint", endpoint, "key", key)
+                    .register(meterRegistry);
+            this.rejectedCounter = Counter.builder("rate.limit.rejected")
+                    .description("Requests rejected by the rate limiter")
+                    .tags("endpoint", endpoint, "key", key)
+                    .register(meterRegistry);
+            Gauge.builder("rate.limit.keys", limiter, TokenBucketRateLimiter::size)
+                    .description("Keys tracked by the rate limiter")
+                    .tags("endpoint", endpoint, "key", key)
+                    .register(meterRegistry);
+        }
+
+        private void check(String key) {
+            long waitNanos = limiter.tryAcquire(key);
+            if (waitNanos == 0) {
+                allowedCounter.increment();
+                return;
+            }
+            rejectedCounter.increment();
+            long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+            throw new RateLimitExceededException("Too many requests", retryAfterSeconds);
+        }
+    }
+}
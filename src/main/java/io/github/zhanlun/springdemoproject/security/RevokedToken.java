@@ -0,0 +1,42 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A token revoked before its expiry, identified by its signature segment.
+ */
+@Table(name = "revoked_token")
+@Entity
+public class RevokedToken {
+    @Id
+    @Column(length = 128)
+    private String signature;
+    private long expiresAtMillis;
+
+    public RevokedToken() {
+    }
+
+    public RevokedToken(String signature, long expiresAtMillis) {
+        this.signature = signature;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public void setSignature(String signature) {
+        this.signature = signature;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public void setExpiresAtMillis(long expiresAtMillis) {
+        this.expiresAtMillis = expiresAtMillis;
+    }
+}
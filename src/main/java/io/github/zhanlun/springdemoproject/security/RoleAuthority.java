@@ -0,0 +1,86 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interned authority for a role name. Every distinct name gets one shared
+ * instance and a small ordinal, which is its bit position in an
+ * {@link AuthoritySet}. Ordinals are handed out in registration order and
+ * stay the same for the life of the process.
+ */
+public final class RoleAuthority implements GrantedAuthority {
+    private static final ConcurrentHashMap<String, RoleAuthority> byName = new ConcurrentHashMap<>();
+    private static volatile RoleAuthority[] byOrdinal = new RoleAuthority[0];
+
+    private final String authority;
+    private final int ordinal;
+
+    private RoleAuthority(String authority, int ordinal) {
+        this.authority = authority;
+        this.ordinal = ordinal;
+    }
+
+    public static RoleAuthority of(String name) {
+        RoleAuthority existing = byName.get(name);
+        return existing != null ? existing : register(name);
+    }
+
+    /**
+     * Ordinal of an already registered name, or -1 if the name was never seen.
+     */
+    public static int ordinalOf(String name) {
+        RoleAuthority existing = byName.get(name);
+        return existing == null ? -1 : existing.ordinal;
+    }
+
+    static RoleAuthority byOrdinal(int ordinal) {
+        return byOrdinal[ordinal];
+    }
+
+    private static synchronized RoleAuthority register(String name) {
+        RoleAuthority existing = byName.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        RoleAuthority created = new RoleAuthority(name, byOrdinal.length);
+        RoleAuthority[] grown = Arrays.copyOf(byOrdinal, created.ordinal + 1);
+        grown[created.ordinal] = created;
+        // publish the array first so an ordinal found in the map always resolves
+        byOrdinal = grown;
+        byName.put(name, created);
+        return created;
+    }
+
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    @Override
+    public String getAuthority() {
+        return authority;
+    }
+
+    private Object readResolve() {
+        return of(authority);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return authority.equals(((RoleAuthority) o).authority);
+    }
+
+    @Override
+    public int hashCode() {
+        return authority.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return authority;
+    }
+}
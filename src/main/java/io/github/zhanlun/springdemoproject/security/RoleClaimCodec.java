@@ -0,0 +1,111 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleCatalog;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Writes and reads the roles of an access token. By default roles are a
+ * {@code roles} array of names. In compact mode they are a {@code rb} bitmask
+ * over the role catalog, ordered by id, plus the catalog fingerprint in
+ * {@code rv}. A compact token whose fingerprint no longer matches is rejected
+ * so the client refreshes it. Reading accepts both formats.
+ */
+@Component
+public class RoleClaimCodec {
+    public static final String ROLES_CLAIM = "roles";
+    public static final String ROLE_BITS_CLAIM = "rb";
+    public static final String ROLE_VERSION_CLAIM = "rv";
+
+    private final Supplier<AppRoleCatalog> catalog;
+    private final boolean compact;
+
+    @Autowired
+    public RoleClaimCodec(AppRoleService appRoleService,
+                          @Value("${app.security.token.compact-roles:false}") boolean compact) {
+        this(appRoleService::getCatalog, compact);
+    }
+
+    public RoleClaimCodec(Supplier<AppRoleCatalog> catalog, boolean compact) {
+        this.catalog = catalog;
+        this.compact = compact;
+    }
+
+    public void writeRoles(Map<String, Object> claims, Collection<? extends GrantedAuthority> authorities) {
+        if (compact) {
+            AppRoleCatalog current = catalog.get();
+            long bits = toBits(current, authorities);
+            if (bits != -1) {
+                claims.put(ROLE_BITS_CLAIM, bits);
+                claims.put(ROLE_VERSION_CLAIM, current.getFingerprint());
+                return;
+            }
+        }
+        List<String> names = new ArrayList<>(authorities.size());
+        authorities.forEach(authority -> names.add(authority.getAuthority()));
+        claims.put(ROLES_CLAIM, names);
+    }
+
+    /**
+     * @throws JWTVerificationException If the token carries no usable role claim
+     */
+    public AuthoritySet readRoles(DecodedJWT decodedJWT) {
+        Claim bits = decodedJWT.getClaim(ROLE_BITS_CLAIM);
+        if (!bits.isNull()) {
+            return fromBits(bits.asLong(), decodedJWT.getClaim(ROLE_VERSION_CLAIM).asLong());
+        }
+        String[] roles = decodedJWT.getClaim(ROLES_CLAIM).asArray(String.class);
+        if (roles == null) {
+            throw new JWTVerificationException("Token has no roles");
+        }
+        return AuthoritySet.ofNames(roles);
+    }
+
+    /**
+     * Bitmask of the authorities, or -1 if one of them is not in the catalog
+     * or the catalog has 64 roles or more, which leaves -1 free as a marker.
+     */
+    private static long toBits(AppRoleCatalog catalog, Collection<? extends GrantedAuthority> authorities) {
+        if (catalog.getRoles().size() >= Long.SIZE) {
+            return -1;
+        }
+        long bits = 0;
+        for (GrantedAuthority authority : authorities) {
+            int index = catalog.indexOf(authority.getAuthority());
+            if (index < 0) {
+                return -1;
+            }
+            bits |= 1L << index;
+        }
+        return bits;
+    }
+
+    private AuthoritySet fromBits(Long bits, Long fingerprint) {
+        AppRoleCatalog current = catalog.get();
+        if (bits == null || fingerprint == null || fingerprint != current.getFingerprint()) {
+            throw new JWTVerificationException("Token roles are out of date");
+        }
+        int size = current.getRoles().size();
+        List<RoleAuthority> authorities = new ArrayList<>(Long.bitCount(bits));
+        for (long remaining = bits; remaining != 0; remaining &= remaining - 1) {
+            int index = Long.numberOfTrailingZeros(remaining);
+            if (index >= size) {
+                throw new JWTVerificationException("Token roles are out of date");
+            }
+            authorities.add(current.authorityAt(index));
+        }
+        return AuthoritySet.of(authorities);
+    }
+}
@@ -12,7 +12,7 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 @Configuration
@@ -23,12 +23,25 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
         jsr250Enabled = true)
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
     private final UserDetailsService userDetailsService;
-    private final BCryptPasswordEncoder bCryptPasswordEncoder;
+    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final TokenService tokenService;
+    private final LoginCredentialsReader loginCredentialsReader;
+    private final RateLimitService rateLimitService;
+    private final AuthenticationMetrics authenticationMetrics;
 
     @Autowired
-    public SecurityConfig(UserDetailsService userDetailsService, BCryptPasswordEncoder bCryptPasswordEncoder) {
+    public SecurityConfig(UserDetailsService userDetailsService, PasswordEncoder passwordEncoder,
+                          PasswordHashingExecutor passwordHashingExecutor, TokenService tokenService,
+                          LoginCredentialsReader loginCredentialsReader, RateLimitService rateLimitService,
+                          AuthenticationMetrics authenticationMetrics) {
         this.userDetailsService = userDetailsService;
-        this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.tokenService = tokenService;
+        this.loginCredentialsReader = loginCredentialsReader;
+        this.rateLimitService = rateLimitService;
+        this.authenticationMetrics = authenticationMetrics;
     }
 
     @Override
@@ -39,23 +52,26 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
-        auth.userDetailsService(userDetailsService).passwordEncoder(bCryptPasswordEncoder);
+        auth.userDetailsService(userDetailsService).passwordEncoder(passwordEncoder);
     }
 
     @Override
     protected void configure(HttpSecurity http) throws Exception {
-        CustomAuthenticationFilter customAuthenticationFilter = new CustomAuthenticationFilter(authenticationManagerBean());
+        CustomAuthenticationFilter customAuthenticationFilter = new CustomAuthenticationFilter(authenticationManagerBean(), passwordHashingExecutor, tokenService, loginCredentialsReader, rateLimitService, authenticationMetrics);
         customAuthenticationFilter.setFilterProcessesUrl("/api/login");
         http.csrf().disable();
         http.sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
         http.authorizeRequests().antMatchers("/api/login", "/api/refreshToken").permitAll();
+        // scraped by Prometheus and probed by the load balancer without a token
+        http.authorizeRequests().antMatchers("/actuator/health", "/actuator/prometheus").permitAll();
 
 //        http.authorizeRequests().antMatchers("/api/users").hasAnyAuthority("ROLE_ADMIN");
 //        http.authorizeRequests().antMatchers("/api/roles").hasAnyAuthority("ROLE_ADMIN");
         http.authorizeRequests().anyRequest().authenticated();
 
+        http.addFilterBefore(new RateLimitFilter(rateLimitService, tokenService), UsernamePasswordAuthenticationFilter.class);
         http.addFilter(customAuthenticationFilter);
-        http.addFilterBefore(new CustomAuthorizationFilter(), UsernamePasswordAuthenticationFilter.class);
+        http.addFilterBefore(new CustomAuthorizationFilter(tokenService, authenticationMetrics), UsernamePasswordAuthenticationFilter.class);
     }
 
     @Bean
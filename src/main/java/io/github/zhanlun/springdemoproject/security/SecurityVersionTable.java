@@ -0,0 +1,77 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory security version per user id, embedded in refresh tokens so a
+ * refresh can be served from the token while the version is unchanged.
+ * <p>
+ * Versions come from one increasing sequence that starts at a random value,
+ * so a version is never reused, not even across restarts. Users without an
+ * entry share the base version; {@link #bumpAll()} moves the base and drops
+ * every entry. A bump must happen after the write it stands for is committed.
+ */
+@Component
+public class SecurityVersionTable {
+    /**
+     * Version that never matches, for data that may have changed while it was read.
+     */
+    public static final long STALE = -1;
+
+    private final AtomicLong sequence = new AtomicLong(ThreadLocalRandom.current().nextLong(1L << 40, 1L << 62));
+    private final ConcurrentHashMap<Long, Long> versions = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private volatile long base = sequence.get();
+
+    @Autowired
+    public SecurityVersionTable(@Value("${app.security.security-version.max-entries:100000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Mark the start of a read of user data; pass it to {@link #versionSince(long, Long)} afterwards.
+     */
+    public long stamp() {
+        return sequence.get();
+    }
+
+    public long current(Long userId) {
+        Long version = versions.get(userId);
+        return version != null ? version : base;
+    }
+
+    /**
+     * Version to record for user data read after {@code stamp} was taken, or
+     * {@link #STALE} if the user's version moved since then.
+     */
+    public long versionSince(long stamp, Long userId) {
+        long version = current(userId);
+        return version > stamp ? STALE : version;
+    }
+
+    public boolean isCurrent(Long userId, long version) {
+        return version != STALE && current(userId) == version;
+    }
+
+    public void bump(Long userId) {
+        if (versions.size() >= maxEntries) {
+            bumpAll();
+            return;
+        }
+        versions.put(userId, sequence.incrementAndGet());
+    }
+
+    /**
+     * Change the version of every user, for writes that do not say which users they touched.
+     */
+    public void bumpAll() {
+        base = sequence.incrementAndGet();
+        versions.clear();
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache of already verified bearer tokens. Each entry lives until the
+ * token's own expiry, so a hit can safely skip signature and claim checks.
+ * Only the immutable principal and authorities are kept; every hit gets its
+ * own authentication token, since callers are free to mutate it. Hits and
+ * misses are published as the {@code token-authentication} cache meters.
+ */
+@Component
+public class TokenAuthenticationCache {
+    private final Cache<String, CachedAuthentication> cache;
+    private final LongSupplier currentTimeMillis;
+
+    @Autowired
+    public TokenAuthenticationCache(@Value("${app.security.token-cache.max-size:10000}") long maxSize,
+                                    MeterRegistry meterRegistry) {
+        this(maxSize, meterRegistry, System::currentTimeMillis);
+    }
+
+    TokenAuthenticationCache(long maxSize, MeterRegistry meterRegistry, LongSupplier currentTimeMillis) {
+        this.currentTimeMillis = currentTimeMillis;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new TokenExpiry(currentTimeMillis))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "token-authentication");
+    }
+
+    public UsernamePasswordAuthenticationToken get(String token) {
+        CachedAuthentication cached = cache.getIfPresent(token);
+        if (cached == null) {
+            return null;
+        }
+        // eviction runs on Caffeine's own schedule; never serve a token past its exp
+        if (cached.expiresAtMillis <= currentTimeMillis.getAsLong()) {
+            cache.invalidate(token);
+            return null;
+        }
+        return new AuthoritySetAuthenticationToken(cached.principal, cached.authorities);
+    }
+
+    public void put(String token, String principal, AuthoritySet authorities, Date expiresAt) {
+        if (expiresAt == null) {
+            return;
+        }
+        cache.put(token, new CachedAuthentication(principal, authorities, expiresAt.getTime()));
+    }
+
+    public void invalidate(String token) {
+        cache.invalidate(token);
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    private static class CachedAuthentication {
+        private final String principal;
+        private final AuthoritySet authorities;
+        private final long expiresAtMillis;
+
+        private CachedAuthentication(String principal, AuthoritySet authorities, long expiresAtMillis) {
+            this.principal = principal;
+            this.authorities = authorities;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private static class TokenExpiry implements Expiry<String, CachedAuthentication> {
+        private final LongSupplier currentTimeMillis;
+
+        private TokenExpiry(LongSupplier currentTimeMillis) {
+            this.currentTimeMillis = currentTimeMillis;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, CachedAuthentication value, long currentTime) {
+            long remainingMillis = value.expiresAtMillis - currentTimeMillis.getAsLong();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMillis, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedAuthentication value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedAuthentication value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory token buckets keyed by string. Keys are spread over stripes that
+ * each have their own lock, buckets are refilled lazily when they are next
+ * used, and each stripe keeps only its most recently used keys so idle keys
+ * are evicted once the key limit is reached.
+ */
+public class TokenBucketRateLimiter {
+    private final double capacity;
+    private final double tokensPerNano;
+    private final Stripe[] stripes;
+    private final LongSupplier nanoClock;
+
+    public TokenBucketRateLimiter(int capacity, double refillPerSecond, int maxKeys, int stripeCount) {
+        this(capacity, refillPerSecond, maxKeys, stripeCount, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(int capacity, double refillPerSecond, int maxKeys, int stripeCount, LongSupplier nanoClock) {
+        if (capacity < 1 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate limit needs a capacity of at least 1 and a positive refill rate");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = refillPerSecond / 1_000_000_000.0;
+        this.stripes = new Stripe[stripeCount];
+        int keysPerStripe = Math.max(1, maxKeys / stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(keysPerStripe);
+        }
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Take one token for the key.
+     *
+     * @return 0 if a token was taken, otherwise the nanoseconds until one is available
+     */
+    public long tryAcquire(String key) {
+        int hash = key.hashCode();
+        Stripe stripe = stripes[((hash ^ (hash >>> 16)) & 0x7fffffff) % stripes.length];
+        long now = nanoClock.getAsLong();
+        synchronized (stripe) {
+            Bucket bucket = stripe.get(key);
+            if (bucket == null) {
+                bucket = new Bucket(capacity, now);
+                stripe.put(key, bucket);
+            } else {
+                bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.refilledAt) * tokensPerNano);
+                bucket.refilledAt = now;
+            }
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - bucket.tokens) / tokensPerNano);
+        }
+    }
+
+    /**
+     * Number of keys currently tracked.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private static class Bucket {
+        private double tokens;
+        private long refilledAt;
+
+        private Bucket(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+    }
+
+    private static class Stripe extends LinkedHashMap<String, Bucket> {
+        private final int maxKeys;
+
+        private Stripe(int maxKeys) {
+            super(16, 0.75f, true);
+            this.maxKeys = maxKeys;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+            return size() > maxKeys;
+        }
+    }
+}
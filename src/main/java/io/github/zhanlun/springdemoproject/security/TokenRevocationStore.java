@@ -0,0 +1,111 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import io.github.zhanlun.springdemoproject.util.BloomFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tokens revoked before their expiry. Every authenticated request asks
+ * {@link #isRevoked(String)}, so the exact set sits behind a Bloom filter:
+ * a token that was never revoked is answered from a few bit probes over its
+ * signature without allocating. Revocations are persisted and reloaded on
+ * startup, and entries are pruned once the token would have expired anyway.
+ */
+@Component
+public class TokenRevocationStore {
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final RevokedTokenRepository repository;
+    private final int expectedEntries;
+    private final ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+    private final AtomicLong falsePositives = new AtomicLong();
+    private volatile BloomFilter filter;
+    private int filterCapacity;
+
+    @Autowired
+    public TokenRevocationStore(RevokedTokenRepository repository,
+                                @Value("${app.security.revocation.expected-entries:100000}") int expectedEntries) {
+        this.repository = repository;
+        this.expectedEntries = expectedEntries;
+        this.filterCapacity = expectedEntries;
+        this.filter = new BloomFilter(expectedEntries, FALSE_POSITIVE_RATE);
+    }
+
+    @PostConstruct
+    public synchronized void load() {
+        for (RevokedToken revokedToken : repository.findByExpiresAtMillisGreaterThan(System.currentTimeMillis())) {
+            revoked.put(revokedToken.getSignature(), revokedToken.getExpiresAtMillis());
+        }
+        rebuildFilter();
+    }
+
+    public boolean isRevoked(String token) {
+        int signatureStart = token.lastIndexOf('.') + 1;
+        if (!filter.mightContain(token, signatureStart, token.length())) {
+            return false;
+        }
+        if (revoked.containsKey(token.substring(signatureStart))) {
+            return true;
+        }
+        falsePositives.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Revoke the token until its expiry. Revoking a token twice, or one that
+     * has already expired, does nothing.
+     */
+    public synchronized void revoke(String token, long expiresAtMillis) {
+        if (expiresAtMillis <= System.currentTimeMillis()) {
+            return;
+        }
+        String signature = token.substring(token.lastIndexOf('.') + 1);
+        if (revoked.containsKey(signature)) {
+            return;
+        }
+        repository.save(new RevokedToken(signature, expiresAtMillis));
+        revoked.put(signature, expiresAtMillis);
+        if (revoked.size() > filterCapacity) {
+            rebuildFilter();
+        } else {
+            filter.put(signature);
+        }
+    }
+
+    /**
+     * Drop entries whose tokens have expired. Bits cannot be cleared from a
+     * Bloom filter, so the filter is rebuilt from what is left.
+     */
+    @Scheduled(fixedDelayString = "${app.security.revocation.prune-interval-millis:60000}")
+    public void prune() {
+        long now = System.currentTimeMillis();
+        repository.deleteExpired(now);
+        synchronized (this) {
+            if (revoked.values().removeIf(expiresAtMillis -> expiresAtMillis <= now)) {
+                rebuildFilter();
+            }
+        }
+    }
+
+    public int getRevokedCount() {
+        return revoked.size();
+    }
+
+    public long getFalsePositiveCount() {
+        return falsePositives.get();
+    }
+
+    private void rebuildFilter() {
+        // leave room to grow so revocations between prunes rarely force a rebuild
+        filterCapacity = Math.max(expectedEntries, revoked.size() * 2);
+        BloomFilter rebuilt = new BloomFilter(filterCapacity, FALSE_POSITIVE_RATE);
+        revoked.keySet().forEach(rebuilt::put);
+        filter = rebuilt;
+    }
+}
@@ -0,0 +1,227 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.http.HttpHeaders.RETRY_AFTER;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+/**
+ * Mints, verifies and writes out JWTs. The HMAC signer, the verifier and the
+ * JSON writers are created once and shared across threads, and the header
+ * segment is encoded once since it is the same for every token.
+ */
+@Component
+public class TokenService {
+    public static final long ACCESS_TOKEN_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    public static final long REFRESH_TOKEN_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String SECURITY_VERSION_CLAIM = "sv";
+    public static final String TOKEN_TYPE_CLAIM = "typ";
+    public static final String REFRESH_TOKEN_TYPE = "refresh";
+
+    private static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
+
+    private final Algorithm algorithm;
+    private final JWTVerifier verifier;
+    private final RoleClaimCodec roleClaimCodec;
+    private final TokenAuthenticationCache tokenCache;
+    private final TokenRevocationStore revocations;
+    private final ObjectWriter payloadWriter;
+    private final ObjectWriter responseWriter;
+    private final byte[] headerSegment;
+
+    @Autowired
+    public TokenService(@Value("${app.security.token.secret:secret}") String secret, RoleClaimCodec roleClaimCodec,
+                        TokenAuthenticationCache tokenCache, TokenRevocationStore revocations, ObjectMapper objectMapper) {
+        this.algorithm = Algorithm.HMAC256(secret.getBytes(StandardCharsets.UTF_8));
+        this.verifier = JWT.require(algorithm).build();
+        this.roleClaimCodec = roleClaimCodec;
+        this.tokenCache = tokenCache;
+        this.revocations = revocations;
+        this.payloadWriter = objectMapper.writerFor(new TypeReference<Map<String, Object>>() {});
+        this.responseWriter = objectMapper.writerFor(new TypeReference<Map<String, String>>() {});
+        this.headerSegment = encode(("{\"alg\":\"" + algorithm.getName() + "\",\"typ\":\"JWT\"}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String createAccessToken(String username, Collection<? extends GrantedAuthority> authorities, String issuer) {
+        Map<String, Object> claims = claims(username, issuer, System.currentTimeMillis() + ACCESS_TOKEN_TTL_MILLIS);
+        roleClaimCodec.writeRoles(claims, authorities);
+        return sign(claims);
+    }
+
+    public String createRefreshToken(String username, Long userId, long securityVersion,
+                                     Collection<? extends GrantedAuthority> authorities, String issuer) {
+        return createRefreshToken(username, userId, securityVersion, authorities, issuer,
+                new Date(System.currentTimeMillis() + REFRESH_TOKEN_TTL_MILLIS));
+    }
+
+    /**
+     * Refresh token that also carries the user's id, security version and
+     * roles, so it can be exchanged for an access token without a database
+     * read while the version is unchanged.
+     */
+    public String createRefreshToken(String username, Long userId, long securityVersion,
+                                     Collection<? extends GrantedAuthority> authorities, String issuer, Date expiresAt) {
+        long expiresAtMillis = expiresAt != null ? expiresAt.getTime() : System.currentTimeMillis() + REFRESH_TOKEN_TTL_MILLIS;
+        Map<String, Object> claims = claims(username, issuer, expiresAtMillis);
+        claims.put(TOKEN_TYPE_CLAIM, REFRESH_TOKEN_TYPE);
+        if (userId != null) {
+            claims.put(USER_ID_CLAIM, userId);
+            claims.put(SECURITY_VERSION_CLAIM, securityVersion);
+            roleClaimCodec.writeRoles(claims, authorities);
+        }
+        return sign(claims);
+    }
+
+    /**
+     * @throws com.auth0.jwt.exceptions.JWTVerificationException If the token carries no usable role claim
+     */
+    public AuthoritySet readRoles(DecodedJWT decodedJWT) {
+        return roleClaimCodec.readRoles(decodedJWT);
+    }
+
+    /**
+     * @throws com.auth0.jwt.exceptions.JWTVerificationException If the token is invalid, expired or revoked
+     */
+    public DecodedJWT verify(String token) {
+        checkNotRevoked(token);
+        return verifier.verify(token);
+    }
+
+    /**
+     * Verify a token presented to the refresh endpoint. Access tokens are
+     * rejected, so they cannot be exchanged for fresh ones.
+     *
+     * @throws com.auth0.jwt.exceptions.JWTVerificationException If the token is invalid, expired, revoked or not a refresh token
+     */
+    public DecodedJWT verifyRefreshToken(String token) {
+        DecodedJWT decodedJWT = verify(token);
+        if (!isRefreshToken(decodedJWT)) {
+            throw new JWTVerificationException("Not a refresh token");
+        }
+        return decodedJWT;
+    }
+
+    /**
+     * Revoke a verified token until its expiry, including any cached
+     * authentication for it.
+     */
+    public void revoke(DecodedJWT decodedJWT) {
+        // a token without an expiry stays valid forever, so its revocation must too
+        Date expiresAt = decodedJWT.getExpiresAt();
+        revocations.revoke(decodedJWT.getToken(), expiresAt != null ? expiresAt.getTime() : Long.MAX_VALUE);
+        tokenCache.invalidate(decodedJWT.getToken());
+    }
+
+    /**
+     * Authentication for a bearer access token, served from the token cache
+     * when the same token was verified before. Refresh tokens are rejected;
+     * they are only accepted by the refresh endpoint.
+     *
+     * @throws com.auth0.jwt.exceptions.JWTVerificationException If the token is invalid, expired, revoked or a refresh token
+     */
+    public UsernamePasswordAuthenticationToken authenticate(String token) {
+        checkNotRevoked(token);
+        UsernamePasswordAuthenticationToken authenticationToken = tokenCache.get(token);
+        if (authenticationToken == null) {
+            DecodedJWT decodedJWT = verifier.verify(token);
+            if (isRefreshToken(decodedJWT)) {
+                throw new JWTVerificationException("Refresh token cannot be used as an access token");
+            }
+            AuthoritySet authorities = roleClaimCodec.readRoles(decodedJWT);
+            tokenCache.put(token, decodedJWT.getSubject(), authorities, decodedJWT.getExpiresAt());
+            authenticationToken = new AuthoritySetAuthenticationToken(decodedJWT.getSubject(), authorities);
+        }
+        return authenticationToken;
+    }
+
+    public void writeTokens(HttpServletResponse response, String accessToken, String refreshToken) throws IOException {
+        Map<String, String> tokens = new HashMap<>();
+        tokens.put("access_token", accessToken);
+        tokens.put("refresh_token", refreshToken);
+        response.setContentType(APPLICATION_JSON_VALUE);
+        responseWriter.writeValue(response.getOutputStream(), tokens);
+    }
+
+    public void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setHeader("error", message);
+        response.setStatus(status.value());
+        Map<String, String> error = new HashMap<>();
+        error.put("error_message", message);
+        response.setContentType(APPLICATION_JSON_VALUE);
+        responseWriter.writeValue(response.getOutputStream(), error);
+    }
+
+    /**
+     * Write an error for a request the client may retry after the given delay.
+     */
+    public void writeError(HttpServletResponse response, HttpStatus status, String message, long retryAfterSeconds) throws IOException {
+        response.setHeader(RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        writeError(response, status, message);
+    }
+
+    private void checkNotRevoked(String token) {
+        if (revocations.isRevoked(token)) {
+            throw new JWTVerificationException("Token has been revoked");
+        }
+    }
+
+    private static boolean isRefreshToken(DecodedJWT decodedJWT) {
+        return REFRESH_TOKEN_TYPE.equals(decodedJWT.getClaim(TOKEN_TYPE_CLAIM).asString());
+    }
+
+    private static Map<String, Object> claims(String username, String issuer, long expiresAtMillis) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("sub", username);
+        claims.put("exp", expiresAtMillis / 1000);
+        if (issuer != null) {
+            claims.put("iss", issuer);
+        }
+        return claims;
+    }
+
+    private String sign(Map<String, Object> claims) {
+        byte[] payloadSegment;
+        try {
+            payloadSegment = encode(payloadWriter.writeValueAsBytes(claims));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not write token claims", e);
+        }
+        byte[] signature = encode(algorithm.sign(headerSegment, payloadSegment));
+        byte[] token = new byte[headerSegment.length + payloadSegment.length + signature.length + 2];
+        System.arraycopy(headerSegment, 0, token, 0, headerSegment.length);
+        token[headerSegment.length] = '.';
+        System.arraycopy(payloadSegment, 0, token, headerSegment.length + 1, payloadSegment.length);
+        token[headerSegment.length + payloadSegment.length + 1] = '.';
+        System.arraycopy(signature, 0, token, token.length - signature.length, signature.length);
+        return new String(token, StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] encode(byte[] bytes) {
+        return BASE64.encode(bytes);
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.zhanlun.springdemoproject.timing;
+
+import java.util.Locale;
+
+/**
+ * Per-request phase durations for the {@code Server-Timing} header. A
+ * recorder only exists while {@link ServerTimingFilter} is handling a
+ * request with the mode enabled; otherwise {@link #record} finds nothing
+ * bound to the thread and returns without allocating.
+ */
+public class ServerTiming {
+    public enum Phase {
+        AUTH, DB, SERIALIZE
+    }
+
+    private static final ThreadLocal<ServerTiming> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private int statements;
+
+    static ServerTiming bind() {
+        ServerTiming timing = new ServerTiming();
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    static void unbind() {
+        CURRENT.remove();
+    }
+
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Add the time since {@code startNanos} to the phase of the current request, if it is being timed.
+     */
+    public static void record(Phase phase, long startNanos) {
+        ServerTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.phaseNanos[phase.ordinal()] += System.nanoTime() - startNanos;
+        }
+    }
+
+    static void recordStatement(long startNanos) {
+        ServerTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.phaseNanos[Phase.DB.ordinal()] += System.nanoTime() - startNanos;
+            timing.statements++;
+        }
+    }
+
+    public long getNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    /**
+     * Header value such as {@code auth;dur=0.41, db;dur=2.30;desc="2 statements", serialize;dur=0.12, total;dur=3.95}.
+     */
+    String toHeaderValue() {
+        StringBuilder header = new StringBuilder(128);
+        for (Phase phase : Phase.values()) {
+            header.append(phase.name().toLowerCase(Locale.ROOT)).append(";dur=").append(millis(phaseNanos[phase.ordinal()]));
+            if (phase == Phase.DB) {
+                header.append(";desc=\"").append(statements).append(statements == 1 ? " statement\"" : " statements\"");
+            }
+            header.append(", ");
+        }
+        return header.append("total;dur=").append(millis(System.nanoTime() - startNanos)).toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.zhanlun.springdemoproject.timing;
+
+import io.github.zhanlun.springdemoproject.util.RequestPaths;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Times the request and adds a {@code Server-Timing} header. The body is
+ * buffered so the header can still be set after the response has been
+ * rendered, which is why this only runs when the mode is switched on.
+ * Streaming endpoints matching {@code unbufferedPaths} are never buffered;
+ * their header is set when the body is first opened, so it covers the time
+ * to the first byte rather than the whole stream.
+ */
+public class ServerTimingFilter extends OncePerRequestFilter {
+    public static final String SERVER_TIMING = "Server-Timing";
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+    private final List<String> unbufferedPaths;
+
+    public ServerTimingFilter(List<String> unbufferedPaths) {
+        this.unbufferedPaths = List.copyOf(unbufferedPaths);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        ServerTiming timing = ServerTiming.bind();
+        if (isUnbuffered(request)) {
+            try {
+                filterChain.doFilter(request, new FirstByteTimingResponse(response, timing));
+            } finally {
+                ServerTiming.unbind();
+            }
+            return;
+        }
+        ContentCachingResponseWrapper bufferedResponse = new ContentCachingResponseWrapper(response);
+        try {
+            filterChain.doFilter(request, bufferedResponse);
+        } finally {
+            ServerTiming.unbind();
+            if (!response.isCommitted()) {
+                response.setHeader(SERVER_TIMING, timing.toHeaderValue());
+            }
+            bufferedResponse.copyBodyToResponse();
+        }
+    }
+
+    private boolean isUnbuffered(HttpServletRequest request) {
+        String path = RequestPaths.pathWithinApplication(request);
+        for (String pattern : unbufferedPaths) {
+            if (pathMatcher.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class FirstByteTimingResponse extends HttpServletResponseWrapper {
+        private final ServerTiming timing;
+        private boolean headerSet;
+
+        FirstByteTimingResponse(HttpServletResponse response, ServerTiming timing) {
+            super(response);
+            this.timing = timing;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            setTimingHeader();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            setTimingHeader();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            setTimingHeader();
+            super.flushBuffer();
+        }
+
+        private void setTimingHeader() {
+            if (!headerSet && !isCommitted()) {
+                setHeader(SERVER_TIMING, timing.toHeaderValue());
+            }
+            headerSet = true;
+        }
+    }
+}
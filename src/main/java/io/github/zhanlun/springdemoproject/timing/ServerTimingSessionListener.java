@@ -0,0 +1,33 @@
+package io.github.zhanlun.springdemoproject.timing;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * Adds JDBC statement and batch execution time to the current request's
+ * {@link ServerTiming}. Hibernate creates one per session, and it is only
+ * registered when Server-Timing is enabled.
+ */
+public class ServerTimingSessionListener extends BaseSessionEventListener {
+    private long statementStart;
+    private long batchStart;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        statementStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        ServerTiming.recordStatement(statementStart);
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        batchStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        ServerTiming.recordStatement(batchStart);
+    }
+}
@@ -1,6 +1,9 @@
 package io.github.zhanlun.springdemoproject.usermgmt.role;
 
+import io.github.zhanlun.springdemoproject.persistence.SecondLevelCacheConfig;
 import io.github.zhanlun.springdemoproject.usermgmt.user.AppUser;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.ArrayList;
@@ -8,6 +11,9 @@ import java.util.Collection;
 
 @Table(name = "app_role")
 @Entity
+@EntityListeners(AppRoleCatalogListener.class)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SecondLevelCacheConfig.ROLE_REGION)
 public class AppRole {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
@@ -0,0 +1,88 @@
+package io.github.zhanlun.springdemoproject.usermgmt.role;
+
+import io.github.zhanlun.springdemoproject.security.RoleAuthority;
+
+import java.util.*;
+
+/**
+ * Immutable snapshot of all roles. A new instance is built on every write,
+ * so readers never lock and lookups do not allocate.
+ */
+public final class AppRoleCatalog {
+    private final long version;
+    private final List<AppRole> roles;
+    private final Map<Long, Optional<AppRole>> byId;
+    private final Map<String, Optional<AppRole>> byName;
+    private final Map<String, Integer> indexByName;
+    private final RoleAuthority[] authorities;
+    private final long fingerprint;
+
+    public AppRoleCatalog(long version, Collection<AppRole> roles) {
+        List<AppRole> sorted = new ArrayList<>(roles);
+        sorted.sort(Comparator.comparing(AppRole::getId));
+        Map<Long, Optional<AppRole>> byId = new HashMap<>();
+        Map<String, Optional<AppRole>> byName = new HashMap<>();
+        Map<String, Integer> indexByName = new HashMap<>();
+        RoleAuthority[] authorities = new RoleAuthority[sorted.size()];
+        long fingerprint = 17;
+        for (int i = 0; i < sorted.size(); i++) {
+            AppRole role = sorted.get(i);
+            byId.put(role.getId(), Optional.of(role));
+            byName.put(role.getName(), Optional.of(role));
+            indexByName.put(role.getName(), i);
+            // register in id order so the seeded roles get the lowest ordinals
+            authorities[i] = RoleAuthority.of(role.getName());
+            fingerprint = 31 * fingerprint + role.getId();
+            fingerprint = 31 * fingerprint + role.getName().hashCode();
+        }
+        this.version = version;
+        this.roles = Collections.unmodifiableList(sorted);
+        this.byId = byId;
+        this.byName = byName;
+        this.indexByName = indexByName;
+        this.authorities = authorities;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Increases every time the catalog is rebuilt.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Hash of the ids and names of all roles. Unlike {@link #getVersion()} it
+     * is the same on every instance that sees the same roles.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * All roles ordered by id.
+     */
+    public List<AppRole> getRoles() {
+        return roles;
+    }
+
+    public Optional<AppRole> findById(Long id) {
+        return byId.getOrDefault(id, Optional.empty());
+    }
+
+    public Optional<AppRole> findByName(String name) {
+        return byName.getOrDefault(name, Optional.empty());
+    }
+
+    /**
+     * Position of the role in {@link #getRoles()}, or -1 if there is no such role.
+     */
+    public int indexOf(String name) {
+        Integer index = indexByName.get(name);
+        return index == null ? -1 : index;
+    }
+
+    public RoleAuthority authorityAt(int index) {
+        return authorities[index];
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.zhanlun.springdemoproject.usermgmt.role;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Rebuilds the role catalog whenever a role is written through JPA, including
+ * writes that bypass {@link AppRoleService}. The rebuild runs once per
+ * transaction after it commits, so the catalog never shows uncommitted roles
+ * and readers never have to wait for it.
+ */
+public class AppRoleCatalogListener {
+    private static final Object REFRESH_PENDING = new Object();
+
+    private final ObjectProvider<AppRoleService> appRoleService;
+
+    @Autowired
+    public AppRoleCatalogListener(ObjectProvider<AppRoleService> appRoleService) {
+        this.appRoleService = appRoleService;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void roleChanged(AppRole role) {
+        AppRoleService service = appRoleService.getIfAvailable();
+        if (service == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            service.refreshCatalog();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(REFRESH_PENDING)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(REFRESH_PENDING, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(REFRESH_PENDING);
+                if (status == STATUS_COMMITTED) {
+                    service.refreshCatalog();
+                }
+            }
+        });
+    }
+}
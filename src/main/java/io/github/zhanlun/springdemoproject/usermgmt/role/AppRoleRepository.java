@@ -3,16 +3,17 @@ package io.github.zhanlun.springdemoproject.usermgmt.role;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface AppRoleRepository extends JpaRepository<AppRole, Long> {
     Optional<AppRole> findByName(String name);
 
-    @Query("" +
-            "SELECT CASE WHEN COUNT(r) > 0 THEN " +
-            "TRUE ELSE FALSE END " +
-            "FROM AppRole r " +
-            "WHERE r.name = ?1"
-    )
-    Boolean roleNameExists(String name);
+    // join table columns are named after the opposite side: app_role_id holds the user id
+    @Query(value = "" +
+            "SELECT r.* FROM app_role r " +
+            "JOIN app_user_app_role ur ON ur.app_user_id = r.id " +
+            "WHERE ur.app_role_id = ?1",
+            nativeQuery = true)
+    List<AppRole> findAllByUserId(Long userId);
 }
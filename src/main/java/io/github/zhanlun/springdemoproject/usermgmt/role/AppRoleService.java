@@ -1,36 +1,69 @@
 package io.github.zhanlun.springdemoproject.usermgmt.role;
 
 import io.github.zhanlun.springdemoproject.util.BadRequestException;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class AppRoleService {
     private final AppRoleRepository roleRepo;
 
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private volatile AppRoleCatalog catalog = new AppRoleCatalog(0, List.of());
+
     @Autowired
     public AppRoleService(AppRoleRepository roleRepo) {
         this.roleRepo = roleRepo;
     }
 
+    /**
+     * Load the first catalog before any request can read it.
+     */
+    @PostConstruct
+    public void init() {
+        refreshCatalog();
+    }
+
+    @Timed("app.role.service")
     public AppRole saveRole(AppRole role) {
-        Boolean roleNameExists = roleRepo.roleNameExists(role.getName());
-        if (roleNameExists) {
+        if (getCatalog().findByName(role.getName()).isPresent()) {
             throw new BadRequestException(
                     "Role name " + role.getName() + " is taken"
             );
         }
+        // AppRoleCatalogListener publishes the new catalog once the insert commits
         return roleRepo.save(role);
     }
 
+    @Timed("app.role.service")
     public List<AppRole> getRoles() {
-        return roleRepo.findAll();
+        return getCatalog().getRoles();
     }
 
+    @Timed("app.role.service")
     public Optional<AppRole> getRoleById(Long id) {
-        return roleRepo.findById(id);
+        return getCatalog().findById(id);
+    }
+
+    /**
+     * Current snapshot of all roles. Never blocks and never reads the database.
+     */
+    public AppRoleCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Reload the roles and publish them as the new catalog. Writers are
+     * serialized so the last catalog published is always read after the last
+     * committed write; readers keep using the previous catalog meanwhile.
+     */
+    public synchronized void refreshCatalog() {
+        catalog = new AppRoleCatalog(catalogVersion.incrementAndGet(), roleRepo.findAll());
     }
 }
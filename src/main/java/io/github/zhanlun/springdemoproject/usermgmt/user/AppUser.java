@@ -1,6 +1,10 @@
 package io.github.zhanlun.springdemoproject.usermgmt.user;
 
+import io.github.zhanlun.springdemoproject.persistence.SecondLevelCacheConfig;
 import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
@@ -10,9 +14,12 @@ import java.util.List;
 @Table(name = "app_user")
 @Entity
 @DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SecondLevelCacheConfig.USER_REGION)
 public class AppUser {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "app_user_seq")
+    @SequenceGenerator(name = "app_user_seq", sequenceName = "app_user_seq", allocationSize = 50)
     private Long id;
     @Column(unique = true)
     private String username;
@@ -21,8 +28,11 @@ public class AppUser {
 
     @JoinTable(name = "APP_USER_APP_ROLE",
             joinColumns = {@JoinColumn(name = "app_role_id")},
-            inverseJoinColumns = {@JoinColumn(name = "app_user_id")})
-    @ManyToMany(fetch = FetchType.EAGER)
+            inverseJoinColumns = {@JoinColumn(name = "app_user_id")},
+            uniqueConstraints = {@UniqueConstraint(columnNames = {"app_role_id", "app_user_id"})})
+    @ManyToMany(fetch = FetchType.LAZY)
+    @BatchSize(size = 100)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SecondLevelCacheConfig.USER_ROLES_REGION)
     private List<AppRole> roles = new ArrayList<>();
 
     public AppUser() {
@@ -0,0 +1,28 @@
+package io.github.zhanlun.springdemoproject.usermgmt.user;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AppUserBulkImportDto {
+    public int created;
+    public int failed;
+    public long elapsedMillis;
+    public List<Row> results = new ArrayList<>();
+
+    public static class Row {
+        public int row;
+        public String username;
+        public Long id;
+        public String error;
+
+        public Row() {
+        }
+
+        public Row(int row, String username, Long id, String error) {
+            this.row = row;
+            this.username = username;
+            this.id = id;
+            this.error = error;
+        }
+    }
+}
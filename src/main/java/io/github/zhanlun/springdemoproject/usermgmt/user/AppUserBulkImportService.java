@@ -0,0 +1,231 @@
+package io.github.zhanlun.springdemoproject.usermgmt.user;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.zhanlun.springdemoproject.security.PasswordHashingExecutor;
+import io.github.zhanlun.springdemoproject.security.PasswordHashingRejectedException;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates users from a JSON array or NDJSON body. Rows are handled in chunks:
+ * passwords are hashed in parallel on the password hashing pool, then the
+ * chunk is inserted with JDBC batching in its own transaction. A row that
+ * fails is reported without aborting the rest of the import. Hashing never
+ * falls back to the request thread: when the pool's queue is full the import
+ * waits for room, and fails with {@link PasswordHashingRejectedException}
+ * (leaving earlier chunks committed) if none frees up in time.
+ */
+@Service
+public class AppUserBulkImportService {
+    private static final long HASHING_BACKOFF_MILLIS = 10;
+
+    private final AppUserRepository userRepo;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final int batchSize;
+    private final long hashingWaitNanos;
+
+    @Autowired
+    public AppUserBulkImportService(AppUserRepository userRepo, EntityManager entityManager,
+                                    PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                                    PasswordEncoder passwordEncoder, PasswordHashingExecutor passwordHashingExecutor,
+                                    @Value("${app.users.bulk.batch-size:100}") int batchSize,
+                                    @Value("${app.users.bulk.hashing-wait-millis:5000}") long hashingWaitMillis) {
+        this.userRepo = userRepo;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.batchSize = batchSize;
+        this.hashingWaitNanos = TimeUnit.MILLISECONDS.toNanos(hashingWaitMillis);
+    }
+
+    public AppUserBulkImportDto importUsers(InputStream body) throws IOException {
+        long start = System.currentTimeMillis();
+        AppUserBulkImportDto result = new AppUserBulkImportDto();
+        Set<String> seenUsernames = new HashSet<>();
+        List<PendingUser> chunk = new ArrayList<>(batchSize);
+        int row = 0;
+
+        try (MappingIterator<AppUser> iterator = objectMapper.readerFor(AppUser.class).readValues(body)) {
+            while (true) {
+                AppUser user;
+                try {
+                    if (!iterator.hasNextValue()) {
+                        break;
+                    }
+                    user = iterator.nextValue();
+                } catch (JsonMappingException e) {
+                    // the iterator skips past a value it cannot bind, so the import can go on
+                    reject(result, row++, null, "Invalid user: " + e.getOriginalMessage());
+                    continue;
+                } catch (JsonProcessingException e) {
+                    reject(result, row, null, "Malformed input: " + e.getOriginalMessage());
+                    break;
+                }
+
+                String error = validate(user, seenUsernames);
+                if (error != null) {
+                    reject(result, row++, user.getUsername(), error);
+                    continue;
+                }
+                seenUsernames.add(user.getUsername());
+                chunk.add(new PendingUser(row++, user));
+                if (chunk.size() == batchSize) {
+                    importChunk(chunk, result);
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, result);
+        }
+        result.results.sort(Comparator.comparingInt(r -> r.row));
+        result.elapsedMillis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    private String validate(AppUser user, Set<String> seenUsernames) {
+        if (user == null) {
+            return "Empty row";
+        }
+        if (user.getUsername() == null || user.getUsername().isBlank()) {
+            return "Username is required";
+        }
+        if (user.getPassword() == null || user.getPassword().isEmpty()) {
+            return "Password is required";
+        }
+        if (seenUsernames.contains(user.getUsername())) {
+            return "Username " + user.getUsername() + " is repeated in this import";
+        }
+        return null;
+    }
+
+    private void importChunk(List<PendingUser> chunk, AppUserBulkImportDto result) {
+        List<String> usernames = new ArrayList<>(chunk.size());
+        chunk.forEach(pending -> usernames.add(pending.user.getUsername()));
+        Set<String> taken = new HashSet<>(userRepo.findExistingUsernames(usernames));
+
+        List<PendingUser> accepted = new ArrayList<>(chunk.size());
+        for (PendingUser pending : chunk) {
+            if (taken.contains(pending.user.getUsername())) {
+                reject(result, pending.row, pending.user.getUsername(), "Username " + pending.user.getUsername() + " is taken");
+            } else {
+                accepted.add(pending);
+            }
+        }
+        hashPasswords(accepted);
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> persist(accepted));
+        } catch (RuntimeException batchFailure) {
+            // retry one by one so only the offending rows are reported
+            for (PendingUser pending : accepted) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> persist(List.of(pending)));
+                } catch (RuntimeException e) {
+                    reject(result, pending.row, pending.user.getUsername(), "Could not insert user: " + rootMessage(e));
+                    pending.failed = true;
+                }
+            }
+        }
+        for (PendingUser pending : accepted) {
+            if (!pending.failed) {
+                result.created++;
+                result.results.add(new AppUserBulkImportDto.Row(pending.row, pending.user.getUsername(), pending.user.getId(), null));
+            }
+        }
+    }
+
+    private void hashPasswords(List<PendingUser> users) {
+        // keep at most one task per pool thread in flight so logins still find room in the queue
+        int parallelism = passwordHashingExecutor.getPoolSize();
+        List<CompletableFuture<String>> hashes = new ArrayList<>(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            if (i >= parallelism) {
+                hashes.get(i - parallelism).join();
+            }
+            hashes.add(hashPassword(users.get(i).user.getPassword()));
+        }
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).user.setPassword(hashes.get(i).join());
+        }
+    }
+
+    private CompletableFuture<String> hashPassword(String rawPassword) {
+        long deadline = System.nanoTime() + hashingWaitNanos;
+        while (true) {
+            try {
+                return passwordHashingExecutor.submit(() -> passwordEncoder.encode(rawPassword));
+            } catch (PasswordHashingRejectedException e) {
+                // logins filled the queue; back off rather than hash on the request thread
+                if (System.nanoTime() - deadline >= 0) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(HASHING_BACKOFF_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void persist(List<PendingUser> users) {
+        entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+        for (PendingUser pending : users) {
+            AppUser user = pending.user;
+            user.setId(null);
+            if (user.getRoles() == null) {
+                user.setRoles(new ArrayList<>());
+            }
+            entityManager.persist(user);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private void reject(AppUserBulkImportDto result, int row, String username, String error) {
+        result.failed++;
+        result.results.add(new AppUserBulkImportDto.Row(row, username, null, error));
+    }
+
+    private static String rootMessage(Throwable throwable) {
+        Throwable root = throwable;
+        while (root.getCause() != null) {
+            root = root.getCause();
+        }
+        return root.getMessage();
+    }
+
+    private static class PendingUser {
+        private final int row;
+        private final AppUser user;
+        private boolean failed;
+
+        private PendingUser(int row, AppUser user) {
+            this.row = row;
+            this.user = user;
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package io.github.zhanlun.springdemoproject.usermgmt.user;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.JWTVerifier;
-import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.zhanlun.springdemoproject.security.AuthoritySet;
+import io.github.zhanlun.springdemoproject.security.RateLimitExceededException;
+import io.github.zhanlun.springdemoproject.security.RateLimitService;
+import io.github.zhanlun.springdemoproject.security.SecurityVersionTable;
+import io.github.zhanlun.springdemoproject.security.TokenService;
 import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
+import io.github.zhanlun.springdemoproject.util.BadRequestException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -15,6 +19,7 @@ import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.security.Principal;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -22,18 +27,45 @@ import java.util.stream.Collectors;
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 import static org.springframework.http.HttpStatus.FORBIDDEN;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
 @RestController
 @RequestMapping("/api")
 public class AppUserController {
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+
     @Autowired
     private AppUserService appUserService;
+    @Autowired
+    private AppUserExportService appUserExportService;
+    @Autowired
+    private AppUserBulkImportService appUserBulkImportService;
+    @Autowired
+    private TokenService tokenService;
+    @Autowired
+    private RateLimitService rateLimitService;
+    @Autowired
+    private SecurityVersionTable securityVersions;
+    @Value("${app.users.page.default-size:20}")
+    private int defaultPageSize;
+    @Value("${app.users.page.max-size:100}")
+    private int maxPageSize;
 
     @GetMapping(path = "/users")
     @PreAuthorize("hasAnyRole('ROLE_ADMIN')")
-    public ResponseEntity<List<AppUser>> getUsers() {
-        return ResponseEntity.ok().body(appUserService.getUsers());
+    public ResponseEntity<AppUserPageDto> getUsers(@RequestParam(name = "cursor", required = false) String cursor,
+                                                   @RequestParam(name = "limit", required = false) Integer limit,
+                                                   @RequestParam(name = "sort", required = false) String sort) {
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        return ResponseEntity.ok().body(appUserService.getUsersPage(cursor, pageSize, sort));
+    }
+
+    @GetMapping(path = "/users/export", produces = NDJSON_VALUE)
+    @PreAuthorize("hasAnyRole('ROLE_ADMIN')")
+    public void exportUsers(@RequestParam(name = "after", required = false) Long after, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON_VALUE);
+        appUserExportService.exportUsers(after, response.getOutputStream());
     }
 
     @GetMapping(path = "/users/{id}")
@@ -52,8 +84,7 @@ public class AppUserController {
 
     @GetMapping(path = "/users/{id}/roles")
     public ResponseEntity<List<AppRole>> getUserRoles(@PathVariable("id") Long id) {
-        Optional<AppUser> appUserOptional = appUserService.getUser(id);
-        return appUserOptional.map(appUser -> ResponseEntity.ok().body(appUser.getRoles()))
+        return appUserService.getUserRoles(id).map(roles -> ResponseEntity.ok().body(roles))
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
@@ -64,11 +95,33 @@ public class AppUserController {
         return new ResponseEntity<AppUser>(createdUser, HttpStatus.CREATED);
     }
 
+    @PostMapping(path = "/users:bulk", consumes = {APPLICATION_JSON_VALUE, NDJSON_VALUE})
+    @PreAuthorize("hasAnyRole('ROLE_ADMIN')")
+    public ResponseEntity<AppUserBulkImportDto> importUsers(HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok().body(appUserBulkImportService.importUsers(request.getInputStream()));
+    }
+
     @PostMapping(path = "/users/{id}/roles/{roleId}")
     @PreAuthorize("hasAnyRole('ROLE_ADMIN')")
     public ResponseEntity<AppUser> addRoleToUser(@PathVariable("id") Long id, @PathVariable("roleId") Long roleId, @RequestBody AppUser appUser) {
-        AppUser updatedUser = appUserService.addRoleToUser(id, roleId);
-        return new ResponseEntity<AppUser>(updatedUser, HttpStatus.CREATED);
+        appUserService.addRoleToUser(id, roleId);
+        return appUserService.getUser(id)
+                .map(updatedUser -> new ResponseEntity<AppUser>(updatedUser, HttpStatus.CREATED))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping(path = "/users/roles/{roleId}")
+    @PreAuthorize("hasAnyRole('ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Integer>> addRoleToUsers(@PathVariable("roleId") Long roleId, @RequestBody RoleMembershipDto selection) {
+        int updated = appUserService.addRoleToUsers(roleId, selection);
+        return ResponseEntity.ok().body(Map.of("updated", updated));
+    }
+
+    @DeleteMapping(path = "/users/roles/{roleId}")
+    @PreAuthorize("hasAnyRole('ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Integer>> removeRoleFromUsers(@PathVariable("roleId") Long roleId, @RequestBody RoleMembershipDto selection) {
+        int updated = appUserService.removeRoleFromUsers(roleId, selection);
+        return ResponseEntity.ok().body(Map.of("updated", updated));
     }
 
     @DeleteMapping(path = "/users/{id}/roles/{roleId}")
@@ -81,12 +134,11 @@ public class AppUserController {
     @PatchMapping(path = "/users/{id}")
     @PreAuthorize("hasAnyRole('ROLE_USER','ROLE_ADMIN')")
     public ResponseEntity<AppUser> updateUserProfile(@PathVariable("id") Long id, @RequestBody AppUserProfileDto appUserProfileDto, Principal principal) {
-        Optional<AppUser> appUserOptional = appUserService.getUser(id);
-        if (appUserOptional.isEmpty()) {
+        Optional<String> usernameOptional = appUserService.getUsername(id);
+        if (usernameOptional.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
-        String targetUsername = appUserOptional.get().getUsername();
-        if (!principal.getName().equals(targetUsername)) {
+        if (!principal.getName().equals(usernameOptional.get())) {
             return ResponseEntity.badRequest().build();
         }
         appUserService.updateUserProfile(appUserProfileDto, id);
@@ -94,47 +146,47 @@ public class AppUserController {
     }
 
     @GetMapping(path = "/refreshToken")
-    public HttpServletResponse refreshToken(HttpServletRequest request, HttpServletResponse response) throws Exception {
-        System.out.println("HERE");
+    public void refreshToken(HttpServletRequest request, HttpServletResponse response) throws Exception {
         String authorizationHeader = request.getHeader(AUTHORIZATION);
 
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
             try {
                 String refresh_token = authorizationHeader.substring("Bearer ".length());
-                final String secretKey = "secret";
-                Algorithm algorithm = Algorithm.HMAC256(secretKey.getBytes());
-                JWTVerifier verifier = JWT.require(algorithm).build();
-                DecodedJWT decodedJWT = verifier.verify(refresh_token);
+                DecodedJWT decodedJWT = tokenService.verifyRefreshToken(refresh_token);
                 String username = decodedJWT.getSubject();
+                rateLimitService.checkUsername(RateLimitService.Endpoint.REFRESH, username);
+                String issuer = request.getRequestURL().toString();
+
+                // nothing changed for this user since the refresh token was minted, so its roles are still valid
+                Long userId = decodedJWT.getClaim(TokenService.USER_ID_CLAIM).asLong();
+                Long securityVersion = decodedJWT.getClaim(TokenService.SECURITY_VERSION_CLAIM).asLong();
+                if (userId != null && securityVersion != null && securityVersions.isCurrent(userId, securityVersion)) {
+                    Optional<AuthoritySet> tokenAuthorities = readRoles(decodedJWT);
+                    if (tokenAuthorities.isPresent()) {
+                        String access_token = tokenService.createAccessToken(username, tokenAuthorities.get(), issuer);
+                        tokenService.writeTokens(response, access_token, refresh_token);
+                        return;
+                    }
+                }
 
+                long stamp = securityVersions.stamp();
                 Optional<AppUser> userOptional = appUserService.getUserByUsername(username);
                 if (userOptional.isEmpty()) {
                     response.setHeader("error", "User not found.");
                     response.setStatus(NOT_FOUND.value());
-                    return response;
+                    return;
                 }
                 AppUser user = userOptional.get();
-                String access_token = JWT.create()
-                        .withSubject(user.getUsername())
-                        .withExpiresAt(new Date(System.currentTimeMillis() + 60 * 1000))
-                        .withIssuer(request.getRequestURL().toString())
-                        .withClaim("roles", user.getRoles().stream().map(AppRole::getName).collect(Collectors.toList()))
-                        .sign(algorithm);
-
-                Map<String, String> tokens = new HashMap<>();
-                tokens.put("access_token", access_token);
-                tokens.put("refresh_token", refresh_token);
-                response.setContentType(APPLICATION_JSON_VALUE);
-                new ObjectMapper().writeValue(response.getOutputStream(), tokens);
-                return response;
+                AuthoritySet authorities = AuthoritySet.ofNames(user.getRoles().stream().map(AppRole::getName).collect(Collectors.toList()));
+                String access_token = tokenService.createAccessToken(user.getUsername(), authorities, issuer);
+                // re-mint the refresh token with the current version but keep its expiry
+                String new_refresh_token = tokenService.createRefreshToken(user.getUsername(), user.getId(),
+                        securityVersions.versionSince(stamp, user.getId()), authorities, issuer, decodedJWT.getExpiresAt());
+                tokenService.writeTokens(response, access_token, new_refresh_token);
+            } catch (RateLimitExceededException exception) {
+                tokenService.writeError(response, TOO_MANY_REQUESTS, exception.getMessage(), exception.getRetryAfterSeconds());
             } catch (Exception exception) {
-                response.setHeader("error", exception.getMessage());
-                response.setStatus(FORBIDDEN.value());
-                Map<String, String> error = new HashMap<>();
-                error.put("error_message", exception.getMessage());
-                response.setContentType(APPLICATION_JSON_VALUE);
-                new ObjectMapper().writeValue(response.getOutputStream(), error);
-                return response;
+                tokenService.writeError(response, FORBIDDEN, exception.getMessage());
             }
 
         } else {
@@ -142,8 +194,35 @@ public class AppUserController {
         }
     }
 
+    @PostMapping(path = "/revokeToken")
+    public ResponseEntity<Void> revokeToken(@RequestBody Map<String, String> body, Principal principal) {
+        String token = body.get("token");
+        if (token == null || token.isBlank()) {
+            throw new BadRequestException("Token is required");
+        }
+        DecodedJWT decodedJWT;
+        try {
+            decodedJWT = tokenService.verify(token);
+        } catch (JWTVerificationException e) {
+            throw new BadRequestException("Invalid token: " + e.getMessage());
+        }
+        if (!principal.getName().equals(decodedJWT.getSubject()) && !hasRole("ROLE_ADMIN")) {
+            return ResponseEntity.badRequest().build();
+        }
+        tokenService.revoke(decodedJWT);
+        return ResponseEntity.noContent().build();
+    }
+
+    private Optional<AuthoritySet> readRoles(DecodedJWT decodedJWT) {
+        try {
+            return Optional.of(tokenService.readRoles(decodedJWT));
+        } catch (JWTVerificationException e) {
+            // e.g. compact roles from an older role catalog
+            return Optional.empty();
+        }
+    }
+
     public static boolean hasRole(String roleName) {
-        return SecurityContextHolder.getContext().getAuthentication().getAuthorities().stream()
-                .anyMatch(grantedAuthority -> grantedAuthority.getAuthority().equals(roleName));
+        return AuthoritySet.hasAuthority(SecurityContextHolder.getContext().getAuthentication().getAuthorities(), roleName);
     }
 }
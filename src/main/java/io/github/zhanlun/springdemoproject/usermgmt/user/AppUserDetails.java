@@ -0,0 +1,84 @@
+package io.github.zhanlun.springdemoproject.usermgmt.user;
+
+import io.github.zhanlun.springdemoproject.security.AuthoritySet;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+
+/**
+ * Immutable snapshot of an {@link AppUser} for authentication. Unlike
+ * {@link org.springframework.security.core.userdetails.User} it does not
+ * erase its password after login, so instances can be shared from a cache.
+ */
+public final class AppUserDetails implements UserDetails {
+    private final Long id;
+    private final String username;
+    private final String password;
+    private final AuthoritySet authorities;
+    private final long securityVersion;
+
+    public AppUserDetails(Long id, String username, String password, Collection<? extends GrantedAuthority> authorities,
+                          long securityVersion) {
+        this.id = id;
+        this.username = username;
+        this.password = password;
+        this.authorities = AuthoritySet.copyOf(authorities);
+        this.securityVersion = securityVersion;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Security version of the user at the time the authorities were read.
+     */
+    public long getSecurityVersion() {
+        return securityVersion;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public Collection<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "AppUserDetails{" +
+                "id=" + id +
+                ", username='" + username + '\'' +
+                ", authorities=" + authorities +
+                '}';
+    }
+}
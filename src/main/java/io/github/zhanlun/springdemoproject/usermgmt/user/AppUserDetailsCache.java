@@ -0,0 +1,115 @@
+package io.github.zhanlun.springdemoproject.usermgmt.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Read-through cache of {@link AppUserDetails} keyed by username, bounded by
+ * size and time-to-live. Writes in {@link AppUserService} evict the affected entry.
+ * Evictions by id or prefix scan the entries that are present and keep a
+ * short log of what they matched, so a load still in flight during a scan
+ * drops its own entry once it completes, but only if that scan would have
+ * evicted it.
+ */
+@Component
+public class AppUserDetailsCache {
+    private static final int RECENT_SCANS = 64;
+
+    private final Cache<String, AppUserDetails> cache;
+    private final AtomicLong scans = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, Predicate<AppUserDetails>> recentScans = new ConcurrentSkipListMap<>();
+
+    @Autowired
+    public AppUserDetailsCache(@Value("${app.user-details-cache.max-size:10000}") long maxSize,
+                               @Value("${app.user-details-cache.ttl:PT10M}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    public AppUserDetails get(String username, Function<String, AppUserDetails> loader) {
+        long seenScans = scans.get();
+        AppUserDetails userDetails = cache.get(username, loader);
+        if (userDetails != null && scans.get() != seenScans && missedByScanSince(seenScans, userDetails)) {
+            // a scan may have missed this entry while it was loading; a newer entry is left alone
+            cache.asMap().remove(username, userDetails);
+        }
+        return userDetails;
+    }
+
+    public void evict(String username) {
+        if (username != null) {
+            cache.invalidate(username);
+        }
+    }
+
+    public void evictById(Long id) {
+        evictByIds(Set.of(id));
+    }
+
+    /**
+     * Evict the entries for users known only by id. This scans the cache once,
+     * which is bounded, and avoids a database lookup for the usernames.
+     */
+    public void evictByIds(Collection<Long> ids) {
+        Set<Long> idSet = ids instanceof Set ? (Set<Long>) ids : new HashSet<>(ids);
+        scan(userDetails -> idSet.contains(userDetails.getId()));
+    }
+
+    public void evictByUsernamePrefix(String prefix) {
+        scan(userDetails -> userDetails.getUsername().startsWith(prefix));
+    }
+
+    private void scan(Predicate<AppUserDetails> evicts) {
+        long scan = scans.incrementAndGet();
+        recentScans.put(scan, evicts);
+        while (recentScans.size() > RECENT_SCANS) {
+            recentScans.pollFirstEntry();
+        }
+        cache.asMap().values().removeIf(evicts);
+    }
+
+    /**
+     * Whether a scan that started after {@code seenScans} would have evicted
+     * the entry. Scans that are no longer (or not yet) in the log count as a match.
+     */
+    private boolean missedByScanSince(long seenScans, AppUserDetails userDetails) {
+        long latest = scans.get();
+        if (latest - seenScans > RECENT_SCANS) {
+            return true;
+        }
+        for (long scan = seenScans + 1; scan <= latest; scan++) {
+            Predicate<AppUserDetails> evicts = recentScans.get(scan);
+            if (evicts == null || evicts.test(userDetails)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.zhanlun.springdemoproject.usermgmt.user;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes the user directory as newline-delimited JSON. Rows are streamed from
+ * the database and detached once written, so memory use does not grow with
+ * the number of users.
+ */
+@Service
+public class AppUserExportService {
+    private static final int FLUSH_EVERY = 500;
+
+    private final AppUserRepository userRepo;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public AppUserExportService(AppUserRepository userRepo, EntityManager entityManager, ObjectMapper objectMapper) {
+        this.userRepo = userRepo;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Stream users ordered by id.
+     *
+     * @param afterId resume after this id, or null to start from the beginning
+     * @param out     destination, flushed periodically
+     * @return number of users written
+     */
+    @Transactional(readOnly = true)
+    public long exportUsers(Long afterId, OutputStream out) throws IOException {
+        long written = 0;
+        try (Stream<AppUser> users = userRepo.streamByIdGreaterThan(afterId == null ? Long.MIN_VALUE : afterId);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            Iterator<AppUser> iterator = users.iterator();
+            while (iterator.hasNext()) {
+                AppUser user = iterator.next();
+                generator.writeObject(user);
+                generator.writeRaw('\n');
+                entityManager.detach(user);
+                if (++written % FLUSH_EVERY == 0) {
+                    generator.flush();
+                }
+            }
+        }
+        return written;
+    }
+}
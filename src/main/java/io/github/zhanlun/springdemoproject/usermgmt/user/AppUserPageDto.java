@@ -0,0 +1,19 @@
+package io.github.zhanlun.springdemoproject.usermgmt.user;
+
+import java.util.List;
+
+public class AppUserPageDto {
+    public List<AppUser> items;
+    /**
+     * Opaque cursor for the following page, null on the last page.
+     */
+    public String next;
+
+    public AppUserPageDto() {
+    }
+
+    public AppUserPageDto(List<AppUser> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+}
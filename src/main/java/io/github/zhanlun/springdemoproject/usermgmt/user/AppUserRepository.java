@@ -1,9 +1,114 @@
 package io.github.zhanlun.springdemoproject.usermgmt.user;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface AppUserRepository extends JpaRepository<AppUser, Long> {
-    Optional<AppUser> findByUsername(String username);
+import static org.hibernate.annotations.QueryHints.NATIVE_SPACES;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+public interface AppUserRepository extends JpaRepository<AppUser, Long>, AppUserRepositoryCustom {
+    /*
+     * Roles are lazy; lookups that return a whole user fetch them in the same
+     * query (see AppUserRepositoryCustom for findById and findByUsername),
+     * while pages rely on batch fetching of the collection.
+     */
+
+    @Override
+    Optional<AppUser> findById(Long id);
+
+    @Override
+    @EntityGraph(attributePaths = "roles")
+    List<AppUser> findAll();
+
+    @Query("SELECT u.username FROM AppUser u WHERE u.id = ?1")
+    Optional<String> findUsernameById(Long id);
+
+    // keyset pages seek on the primary key index, so every page costs the same
+    List<AppUser> findByIdGreaterThan(Long id, Pageable pageable);
+
+    List<AppUser> findByIdLessThan(Long id, Pageable pageable);
+
+    @Query("SELECT u.username FROM AppUser u WHERE u.username IN ?1")
+    List<String> findExistingUsernames(Collection<String> usernames);
+
+    // roles are fetched in the same scroll; ordering by the root id lets Hibernate
+    // fold the row per role back into one user before it is handed out
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT u FROM AppUser u LEFT JOIN FETCH u.roles WHERE u.id > ?1 ORDER BY u.id")
+    Stream<AppUser> streamByIdGreaterThan(Long id);
+
+    /*
+     * Role membership is changed with single statements on the join table.
+     * Note the join table columns are named after the opposite side:
+     * app_role_id holds the user id and app_user_id holds the role id.
+     * Declaring the join table as the only query space keeps these statements
+     * from clearing every second-level cache region; only cached queries that
+     * read the join table are invalidated, and AppUserService evicts the
+     * affected roles collections.
+     */
+
+    @Transactional
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "app_user_app_role"))
+    @Query(value = "" +
+            "INSERT INTO app_user_app_role (app_role_id, app_user_id) " +
+            "SELECT u.id, r.id FROM app_user u, app_role r " +
+            "WHERE u.id = ?1 AND r.id = ?2 AND NOT EXISTS (" +
+            "SELECT 1 FROM app_user_app_role ur WHERE ur.app_role_id = u.id AND ur.app_user_id = r.id)",
+            nativeQuery = true)
+    int grantRole(Long userId, Long roleId);
+
+    @Transactional
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "app_user_app_role"))
+    @Query(value = "DELETE FROM app_user_app_role WHERE app_role_id = ?1 AND app_user_id = ?2", nativeQuery = true)
+    int revokeRole(Long userId, Long roleId);
+
+    @Transactional
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "app_user_app_role"))
+    @Query(value = "" +
+            "INSERT INTO app_user_app_role (app_role_id, app_user_id) " +
+            "SELECT u.id, r.id FROM app_user u, app_role r " +
+            "WHERE u.id IN ?2 AND r.id = ?1 AND NOT EXISTS (" +
+            "SELECT 1 FROM app_user_app_role ur WHERE ur.app_role_id = u.id AND ur.app_user_id = r.id)",
+            nativeQuery = true)
+    int grantRoleToUsers(Long roleId, Collection<Long> userIds);
+
+    @Transactional
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "app_user_app_role"))
+    @Query(value = "DELETE FROM app_user_app_role WHERE app_user_id = ?1 AND app_role_id IN ?2", nativeQuery = true)
+    int revokeRoleFromUsers(Long roleId, Collection<Long> userIds);
+
+    @Transactional
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "app_user_app_role"))
+    @Query(value = "" +
+            "INSERT INTO app_user_app_role (app_role_id, app_user_id) " +
+            "SELECT u.id, r.id FROM app_user u, app_role r " +
+            "WHERE u.username LIKE ?2 ESCAPE '\\' AND r.id = ?1 AND NOT EXISTS (" +
+            "SELECT 1 FROM app_user_app_role ur WHERE ur.app_role_id = u.id AND ur.app_user_id = r.id)",
+            nativeQuery = true)
+    int grantRoleToUsernamesLike(Long roleId, String usernamePattern);
+
+    @Transactional
+    @Modifying
+    @QueryHints(@QueryHint(name = NATIVE_SPACES, value = "app_user_app_role"))
+    @Query(value = "" +
+            "DELETE FROM app_user_app_role WHERE app_user_id = ?1 AND app_role_id IN (" +
+            "SELECT u.id FROM app_user u WHERE u.username LIKE ?2 ESCAPE '\\')",
+            nativeQuery = true)
+    int revokeRoleFromUsernamesLike(Long roleId, String usernamePattern);
 }
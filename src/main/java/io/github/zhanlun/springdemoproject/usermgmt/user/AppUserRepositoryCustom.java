@@ -0,0 +1,18 @@
+package io.github.zhanlun.springdemoproject.usermgmt.user;
+
+import java.util.Optional;
+
+/**
+ * Lookups that return a whole user with its roles initialized, whether the
+ * user comes from the database or from the second-level cache, and eviction
+ * of cached roles after role membership is changed with native statements.
+ */
+public interface AppUserRepositoryCustom {
+    Optional<AppUser> findById(Long id);
+
+    Optional<AppUser> findByUsername(String username);
+
+    void evictCachedRoles(Long userId);
+
+    void evictAllCachedRoles();
+}
@@ -0,0 +1,80 @@
+package io.github.zhanlun.springdemoproject.usermgmt.user;
+
+import org.hibernate.Cache;
+import org.hibernate.Hibernate;
+import org.hibernate.graph.GraphSemantic;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityGraph;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Map;
+import java.util.Optional;
+
+import static io.github.zhanlun.springdemoproject.persistence.SecondLevelCacheConfig.USER_QUERY_REGION;
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_REGION;
+
+/*
+ * A miss fetches the roles in the same query as the user. A hit assembles
+ * the user from the second-level cache, which ignores the fetch graph and
+ * leaves the roles lazy, so they are initialized here from the collection
+ * cache before the entity leaves the transaction.
+ */
+@Transactional(readOnly = true)
+class AppUserRepositoryCustomImpl implements AppUserRepositoryCustom {
+    private static final String ROLES_ROLE = AppUser.class.getName() + ".roles";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Optional<AppUser> findById(Long id) {
+        AppUser user = entityManager.find(AppUser.class, id, Map.of(GraphSemantic.FETCH.getJpaHintName(), rolesGraph()));
+        return Optional.ofNullable(user).map(AppUserRepositoryCustomImpl::withRoles);
+    }
+
+    @Override
+    public Optional<AppUser> findByUsername(String username) {
+        return entityManager.createQuery("SELECT u FROM AppUser u WHERE u.username = ?1", AppUser.class)
+                .setParameter(1, username)
+                .setHint(GraphSemantic.FETCH.getJpaHintName(), rolesGraph())
+                .setHint(HINT_CACHEABLE, true)
+                .setHint(HINT_CACHE_REGION, USER_QUERY_REGION)
+                .getResultList()
+                .stream()
+                .findFirst()
+                .map(AppUserRepositoryCustomImpl::withRoles);
+    }
+
+    /*
+     * Hibernate only evicts collections owned by entities whose tables a
+     * native statement touches, and the membership statements only touch
+     * the join table, so the roles collection is evicted here instead.
+     */
+
+    @Override
+    public void evictCachedRoles(Long userId) {
+        cache().evictCollectionData(ROLES_ROLE, userId);
+    }
+
+    @Override
+    public void evictAllCachedRoles() {
+        cache().evictCollectionData(ROLES_ROLE);
+    }
+
+    private Cache cache() {
+        return entityManager.getEntityManagerFactory().getCache().unwrap(Cache.class);
+    }
+
+    private EntityGraph<AppUser> rolesGraph() {
+        EntityGraph<AppUser> graph = entityManager.createEntityGraph(AppUser.class);
+        graph.addAttributeNodes("roles");
+        return graph;
+    }
+
+    private static AppUser withRoles(AppUser user) {
+        Hibernate.initialize(user.getRoles());
+        return user;
+    }
+}
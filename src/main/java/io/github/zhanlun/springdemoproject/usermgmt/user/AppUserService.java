@@ -1,80 +1,315 @@
 package io.github.zhanlun.springdemoproject.usermgmt.user;
 
+import io.github.zhanlun.springdemoproject.security.AuthoritySet;
+import io.github.zhanlun.springdemoproject.security.PasswordHashingExecutor;
+import io.github.zhanlun.springdemoproject.security.SecurityVersionTable;
 import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
 import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleRepository;
 import io.github.zhanlun.springdemoproject.util.BadRequestException;
+import io.github.zhanlun.springdemoproject.util.SingleFlight;
+import io.micrometer.core.annotation.Timed;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.Optional;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 
 
 @Service
-public class AppUserService implements UserDetailsService {
+public class AppUserService implements UserDetailsService, UserDetailsPasswordService {
+    private static final String SORT_ID_ASC = "id";
+    private static final String SORT_ID_DESC = "-id";
+
     private final AppUserRepository userRepo;
     private final AppRoleRepository roleRepo;
 
     private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final AppUserDetailsCache userDetailsCache;
+    private final SecurityVersionTable securityVersions;
+    private final SingleFlight<Long, Optional<AppUser>> userLookupsById = new SingleFlight<>();
+    private final SingleFlight<String, Optional<AppUser>> userLookupsByUsername = new SingleFlight<>();
 
     @Autowired
-    public AppUserService(AppUserRepository userRepo, AppRoleRepository roleRepo, PasswordEncoder passwordEncoder) {
+    public AppUserService(AppUserRepository userRepo, AppRoleRepository roleRepo, PasswordEncoder passwordEncoder,
+                          PasswordHashingExecutor passwordHashingExecutor, AppUserDetailsCache userDetailsCache,
+                          SecurityVersionTable securityVersions) {
         this.userRepo = userRepo;
         this.roleRepo = roleRepo;
         this.passwordEncoder = passwordEncoder;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.userDetailsCache = userDetailsCache;
+        this.securityVersions = securityVersions;
     }
 
+    @Timed("app.user.service")
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        return userDetailsCache.get(username, this::loadUserDetails);
+    }
+
+    private AppUserDetails loadUserDetails(String username) {
+        long stamp = securityVersions.stamp();
         Optional<AppUser> appUserOptional = userRepo.findByUsername(username);
         if (appUserOptional.isEmpty()) {
             throw new UsernameNotFoundException("User not found in db");
         }
         AppUser user = appUserOptional.get();
-        Collection<SimpleGrantedAuthority> authorities = new ArrayList<>();
-        user.getRoles().forEach(role -> authorities.add(new SimpleGrantedAuthority(role.getName())));
-        return new org.springframework.security.core.userdetails.User(user.getUsername(), user.getPassword(), authorities);
+        List<String> roleNames = new ArrayList<>(user.getRoles().size());
+        user.getRoles().forEach(role -> roleNames.add(role.getName()));
+        return new AppUserDetails(user.getId(), user.getUsername(), user.getPassword(), AuthoritySet.ofNames(roleNames),
+                securityVersions.versionSince(stamp, user.getId()));
+    }
+
+    /**
+     * Persist a re-hashed password after a successful login whose stored hash
+     * no longer matches the configured BCrypt cost.
+     */
+    @Timed("app.user.service")
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        Optional<AppUser> appUserOptional = userRepo.findByUsername(user.getUsername());
+        if (appUserOptional.isEmpty()) {
+            return user;
+        }
+        AppUser appUser = appUserOptional.get();
+        appUser.setPassword(newPassword);
+        userRepo.save(appUser);
+        userDetailsCache.evict(appUser.getUsername());
+        forgetInFlightLookups();
+        securityVersions.bump(appUser.getId());
+        return new AppUserDetails(appUser.getId(), appUser.getUsername(), newPassword, user.getAuthorities(), SecurityVersionTable.STALE);
     }
 
+    @Timed("app.user.service")
     public AppUser addUser(AppUser user) {
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
-        return userRepo.save(user);
+        String rawPassword = user.getPassword();
+        user.setPassword(passwordHashingExecutor.call(() -> passwordEncoder.encode(rawPassword)));
+        AppUser savedUser = userRepo.save(user);
+        userDetailsCache.evict(user.getUsername());
+        forgetInFlightLookups();
+        return savedUser;
     }
 
-    public AppUser addRoleToUser(Long userId, Long roleId) {
-        Optional<AppUser> appUserOptional = userRepo.findById(userId);
-        Optional<AppRole> roleOptional = roleRepo.findById(roleId);
-        if (appUserOptional.isEmpty()) {
+    /**
+     * Grant a role with a single insert on the join table, without loading either entity.
+     *
+     * @throws BadRequestException If the user or role is not found
+     */
+    @Timed("app.user.service")
+    public void addRoleToUser(Long userId, Long roleId) throws BadRequestException {
+        int inserted;
+        try {
+            inserted = userRepo.grantRole(userId, roleId);
+        } catch (DataIntegrityViolationException e) {
+            // a concurrent request granted the same role first
+            inserted = 0;
+        }
+        if (inserted == 0) {
+            requireUserAndRole(userId, roleId);
+        }
+        userRepo.evictCachedRoles(userId);
+        userDetailsCache.evictById(userId);
+        forgetInFlightLookups();
+        securityVersions.bump(userId);
+    }
+
+    /**
+     * Grant a role to every listed user, or to every user whose username starts with the prefix.
+     *
+     * @return number of memberships created
+     * @throws BadRequestException If the role is not found or the selection is invalid
+     */
+    @Timed("app.user.service")
+    public int addRoleToUsers(Long roleId, RoleMembershipDto selection) throws BadRequestException {
+        requireRole(roleId);
+        requireSingleSelection(selection);
+        if (selection.userIds != null) {
+            if (selection.userIds.isEmpty()) {
+                return 0;
+            }
+            int inserted = userRepo.grantRoleToUsers(roleId, selection.userIds);
+            selection.userIds.forEach(userRepo::evictCachedRoles);
+            userDetailsCache.evictByIds(selection.userIds);
+            forgetInFlightLookups();
+            selection.userIds.forEach(securityVersions::bump);
+            return inserted;
+        }
+        int inserted = userRepo.grantRoleToUsernamesLike(roleId, likePrefix(selection.usernamePrefix));
+        userRepo.evictAllCachedRoles();
+        userDetailsCache.evictByUsernamePrefix(selection.usernamePrefix);
+        forgetInFlightLookups();
+        securityVersions.bumpAll();
+        return inserted;
+    }
+
+    /**
+     * Revoke a role from every listed user, or from every user whose username starts with the prefix.
+     *
+     * @return number of memberships removed
+     * @throws BadRequestException If the role is not found or the selection is invalid
+     */
+    @Timed("app.user.service")
+    public int removeRoleFromUsers(Long roleId, RoleMembershipDto selection) throws BadRequestException {
+        requireRole(roleId);
+        requireSingleSelection(selection);
+        if (selection.userIds != null) {
+            if (selection.userIds.isEmpty()) {
+                return 0;
+            }
+            int deleted = userRepo.revokeRoleFromUsers(roleId, selection.userIds);
+            selection.userIds.forEach(userRepo::evictCachedRoles);
+            userDetailsCache.evictByIds(selection.userIds);
+            forgetInFlightLookups();
+            selection.userIds.forEach(securityVersions::bump);
+            return deleted;
+        }
+        int deleted = userRepo.revokeRoleFromUsernamesLike(roleId, likePrefix(selection.usernamePrefix));
+        userRepo.evictAllCachedRoles();
+        userDetailsCache.evictByUsernamePrefix(selection.usernamePrefix);
+        forgetInFlightLookups();
+        securityVersions.bumpAll();
+        return deleted;
+    }
+
+    private void requireUserAndRole(Long userId, Long roleId) {
+        if (!userRepo.existsById(userId)) {
             throw new BadRequestException("User not found in db");
         }
-        if (roleOptional.isEmpty()) {
+        requireRole(roleId);
+    }
+
+    private void requireRole(Long roleId) {
+        if (!roleRepo.existsById(roleId)) {
             throw new BadRequestException("Role not found in db");
         }
+    }
 
-        AppUser user = appUserOptional.get();
-        AppRole role = roleOptional.get();
-        user.getRoles().add(role);
-        return userRepo.save(user);
+    private static void requireSingleSelection(RoleMembershipDto selection) {
+        if (selection == null || (selection.userIds == null) == (selection.usernamePrefix == null)) {
+            throw new BadRequestException("Exactly one of userIds or usernamePrefix is required");
+        }
     }
 
+    private static String likePrefix(String prefix) {
+        return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    /**
+     * Concurrent lookups of the same id share one query and its result.
+     */
+    @Timed("app.user.service")
     public Optional<AppUser> getUser(Long id) {
-        return userRepo.findById(id);
+        return userLookupsById.execute(id, () -> userRepo.findById(id));
+    }
+
+    @Timed("app.user.service")
+    public Optional<String> getUsername(Long id) {
+        return userRepo.findUsernameById(id);
+    }
+
+    /**
+     * Roles of a user read from the join table, or empty if the user does not exist.
+     */
+    @Timed("app.user.service")
+    public Optional<List<AppRole>> getUserRoles(Long id) {
+        List<AppRole> roles = roleRepo.findAllByUserId(id);
+        if (roles.isEmpty() && !userRepo.existsById(id)) {
+            return Optional.empty();
+        }
+        return Optional.of(roles);
     }
 
+    /**
+     * Concurrent lookups of the same username share one query and its result.
+     */
+    @Timed("app.user.service")
     public Optional<AppUser> getUserByUsername(String username) {
-        return userRepo.findByUsername(username);
+        return userLookupsByUsername.execute(username, () -> userRepo.findByUsername(username));
     }
 
+    public long getSharedLookupCount() {
+        return userLookupsById.getSharedCalls() + userLookupsByUsername.getSharedCalls();
+    }
+
+    private void forgetInFlightLookups() {
+        userLookupsById.forgetAll();
+        userLookupsByUsername.forgetAll();
+    }
+
+    @Timed("app.user.service")
     public List<AppUser> getUsers() {
         return userRepo.findAll();
     }
 
+    /**
+     * Keyset page of users ordered by id.
+     *
+     * @param cursor opaque cursor from a previous page, or null for the first page
+     * @param limit  maximum number of users to return
+     * @param sort   "id" or "-id", or null to use the cursor's order (ascending by default)
+     * @throws BadRequestException If the cursor or sort is invalid
+     */
+    @Timed("app.user.service")
+    @Transactional(readOnly = true)
+    public AppUserPageDto getUsersPage(String cursor, int limit, String sort) throws BadRequestException {
+        if (sort != null && !sort.equals(SORT_ID_ASC) && !sort.equals(SORT_ID_DESC)) {
+            throw new BadRequestException("Unsupported sort " + sort);
+        }
+        String order = sort == null ? SORT_ID_ASC : sort;
+        Long afterId = null;
+        if (cursor != null) {
+            String decoded;
+            try {
+                decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Invalid cursor");
+            }
+            int separator = decoded.lastIndexOf(':');
+            String cursorOrder = separator < 0 ? "" : decoded.substring(0, separator);
+            if (!cursorOrder.equals(SORT_ID_ASC) && !cursorOrder.equals(SORT_ID_DESC)) {
+                throw new BadRequestException("Invalid cursor");
+            }
+            if (sort != null && !sort.equals(cursorOrder)) {
+                throw new BadRequestException("Cursor was issued for sort " + cursorOrder);
+            }
+            order = cursorOrder;
+            try {
+                afterId = Long.parseLong(decoded.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("Invalid cursor");
+            }
+        }
+
+        // fetch one extra row to learn whether another page exists
+        List<AppUser> users;
+        if (order.equals(SORT_ID_ASC)) {
+            Pageable pageable = PageRequest.of(0, limit + 1, Sort.by(Sort.Direction.ASC, "id"));
+            users = userRepo.findByIdGreaterThan(afterId == null ? Long.MIN_VALUE : afterId, pageable);
+        } else {
+            Pageable pageable = PageRequest.of(0, limit + 1, Sort.by(Sort.Direction.DESC, "id"));
+            users = userRepo.findByIdLessThan(afterId == null ? Long.MAX_VALUE : afterId, pageable);
+        }
+        List<AppUser> page = users.size() <= limit ? users : users.subList(0, limit);
+        // roles are rendered after the transaction ends; @BatchSize loads them for the whole page in one query
+        page.forEach(user -> Hibernate.initialize(user.getRoles()));
+        if (users.size() <= limit) {
+            return new AppUserPageDto(page, null);
+        }
+        String next = order + ":" + page.get(limit - 1).getId();
+        return new AppUserPageDto(page, Base64.getUrlEncoder().withoutPadding().encodeToString(next.getBytes(StandardCharsets.UTF_8)));
+    }
+
     /**
      * Partial update on AppUser
      *
@@ -82,6 +317,8 @@ public class AppUserService implements UserDetailsService {
      * @param id      id of AppUser
      * @throws BadRequestException If user is not found
      */
+    @Timed("app.user.service")
+    @Transactional
     public void updateUserProfile(AppUserProfileDto updates, Long id) throws BadRequestException {
         Optional<AppUser> appUserOptional = userRepo.findById(id);
         if (appUserOptional.isEmpty()) {
@@ -90,21 +327,24 @@ public class AppUserService implements UserDetailsService {
         AppUser appUser = appUserOptional.get();
         appUser.setFullname(updates.fullname);
         userRepo.save(appUser);
+        userDetailsCache.evict(appUser.getUsername());
+        forgetInFlightLookups();
     }
 
-    public void removeRoleFromUser(Long userId, Long roleId) {
-        Optional<AppUser> appUserOptional = userRepo.findById(userId);
-        Optional<AppRole> roleOptional = roleRepo.findById(roleId);
-        if (appUserOptional.isEmpty()) {
-            throw new BadRequestException("User not found in db");
-        }
-        if (roleOptional.isEmpty()) {
-            throw new BadRequestException("Role not found in db");
+    /**
+     * Revoke a role with a single delete on the join table, without loading either entity.
+     *
+     * @throws BadRequestException If the user or role is not found
+     */
+    @Timed("app.user.service")
+    public void removeRoleFromUser(Long userId, Long roleId) throws BadRequestException {
+        int deleted = userRepo.revokeRole(userId, roleId);
+        if (deleted == 0) {
+            requireUserAndRole(userId, roleId);
         }
-
-        AppUser user = appUserOptional.get();
-        AppRole role = roleOptional.get();
-        user.getRoles().remove(role);
-        userRepo.save(user);
+        userRepo.evictCachedRoles(userId);
+        userDetailsCache.evictById(userId);
+        forgetInFlightLookups();
+        securityVersions.bump(userId);
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,19 @@
+package io.github.zhanlun.springdemoproject.usermgmt.user;
+
+import java.util.List;
+
+/**
+ * Selects the users for a bulk role grant or revoke: either explicit ids or a username prefix.
+ */
+public class RoleMembershipDto {
+    public List<Long> userIds;
+    public String usernamePrefix;
+
+    public RoleMembershipDto() {
+    }
+
+    public RoleMembershipDto(List<Long> userIds, String usernamePrefix) {
+        this.userIds = userIds;
+        this.usernamePrefix = usernamePrefix;
+    }
+}
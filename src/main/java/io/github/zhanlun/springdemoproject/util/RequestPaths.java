@@ -0,0 +1,21 @@
+package io.github.zhanlun.springdemoproject.util;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Path matching for filters. The servlet path is empty outside a servlet
+ * container (e.g. MockMvc) and only covers part of the URI under a non-root
+ * servlet mapping, so filters match on the request URI without the context
+ * path instead.
+ */
+public final class RequestPaths {
+    private RequestPaths() {
+    }
+
+    /**
+     * Request URI below the context path, such as {@code /api/login}.
+     */
+    public static String pathWithinApplication(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.zhanlun.springdemoproject;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class MetricsTest extends BaseControllerTest {
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void canGetHealthWithoutToken() throws Exception {
+        this.get("/actuator/health").andExpect(status().isOk());
+    }
+
+    @Test
+    void canCountLoginOutcomesAndTimePhases() throws Exception {
+        double badCredentials = loginCount("bad_credentials");
+        double invalidRequests = loginCount("invalid_request");
+
+        this.mockMvc.perform(MockMvcRequestBuilders.post("/api/login")
+                        .with(request -> {
+                            request.setRemoteAddr("10.0.0.2");
+                            return request;
+                        })
+                        .content("{\"username\":\"metrics_user\",\"password\":\"wrong\"}")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnauthorized());
+        this.mockMvc.perform(MockMvcRequestBuilders.post("/api/login")
+                        .with(request -> {
+                            request.setRemoteAddr("10.0.0.2");
+                            return request;
+                        })
+                        .content("not json")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        assertThat(loginCount("bad_credentials")).isEqualTo(badCredentials + 1);
+        assertThat(loginCount("invalid_request")).isEqualTo(invalidRequests + 1);
+        assertThat(meterRegistry.get("auth.login.phase").tag("phase", "parse").timer().count()).isPositive();
+        assertThat(meterRegistry.get("auth.login.phase").tag("phase", "password").timer().count()).isPositive();
+        assertThat(meterRegistry.get("app.user.service").tag("method", "loadUserByUsername").timer().count()).isPositive();
+    }
+
+    @Test
+    void canTimeTokenVerification() throws Exception {
+        long failures = meterRegistry.get("auth.token.verification").tag("outcome", "failure").timer().count();
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/api/roles")
+                        .header("Authorization", "Bearer not-a-token"))
+                .andExpect(status().isForbidden());
+
+        assertThat(meterRegistry.get("auth.token.verification").tag("outcome", "failure").timer().count()).isEqualTo(failures + 1);
+    }
+
+    private double loginCount(String outcome) {
+        return meterRegistry.get("auth.login").tag("outcome", outcome).counter().count();
+    }
+}
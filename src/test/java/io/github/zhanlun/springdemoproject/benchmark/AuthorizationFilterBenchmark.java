@@ -0,0 +1,71 @@
+package io.github.zhanlun.springdemoproject.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.zhanlun.springdemoproject.security.AuthenticationMetrics;
+import io.github.zhanlun.springdemoproject.security.AuthoritySet;
+import io.github.zhanlun.springdemoproject.security.CustomAuthorizationFilter;
+import io.github.zhanlun.springdemoproject.security.RevokedTokenRepository;
+import io.github.zhanlun.springdemoproject.security.RoleClaimCodec;
+import io.github.zhanlun.springdemoproject.security.TokenAuthenticationCache;
+import io.github.zhanlun.springdemoproject.security.TokenRevocationStore;
+import io.github.zhanlun.springdemoproject.security.TokenService;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleCatalog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.servlet.FilterChain;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+
+/**
+ * One request through {@link CustomAuthorizationFilter}, from reading the
+ * bearer header to populating the security context, with and without the
+ * verified token cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthorizationFilterBenchmark {
+    @Param({"true", "false"})
+    private boolean tokenCache;
+
+    private CustomAuthorizationFilter filter;
+    private FilterChain chain;
+    private String authorizationHeader;
+
+    @Setup
+    public void setUp() {
+        AppRoleCatalog catalog = new AppRoleCatalog(1, List.of(
+                new AppRole(1L, "ROLE_USER", null),
+                new AppRole(2L, "ROLE_ADMIN", null)
+        ));
+        TokenService tokenService = new TokenService("secret", new RoleClaimCodec(() -> catalog, false),
+                new TokenAuthenticationCache(tokenCache ? 10_000 : 0, new SimpleMeterRegistry()),
+                new TokenRevocationStore(mock(RevokedTokenRepository.class), 10_000), new ObjectMapper());
+        filter = new CustomAuthorizationFilter(tokenService, new AuthenticationMetrics(new SimpleMeterRegistry()));
+        chain = (request, response) -> { };
+        authorizationHeader = "Bearer " + tokenService.createAccessToken("benchmark", AuthoritySet.ofNames("ROLE_USER", "ROLE_ADMIN"), null);
+    }
+
+    @Benchmark
+    public Object doFilter() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users/1");
+        request.setServletPath("/api/users/1");
+        request.addHeader(AUTHORIZATION, authorizationHeader);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        Object authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.zhanlun.springdemoproject.benchmark;
+
+import io.github.zhanlun.springdemoproject.LibraryManagementApplication;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUser;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUserBulkImportDto;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUserBulkImportService;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AppUserBulkImportService#importUsers} against the same number of
+ * {@link AppUserService#addUser} calls, reported as time per user. BCrypt
+ * runs at its minimum cost so the database path dominates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(BulkImportBenchmark.USERS_PER_INVOCATION)
+public class BulkImportBenchmark {
+    static final int USERS_PER_INVOCATION = 1_000;
+
+    @Param({"100", "500"})
+    private int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private AppUserService appUserService;
+    private AppUserBulkImportService bulkImportService;
+    private long invocation;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(LibraryManagementApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:bulk-import-benchmark",
+                        "app.users.bulk.batch-size=" + batchSize,
+                        "app.security.bcrypt.strength=4",
+                        "app.security.bcrypt.min-strength=4",
+                        "app.security.bcrypt.calibrate=false",
+                        "logging.level.root=WARN")
+                .run();
+        appUserService = context.getBean(AppUserService.class);
+        bulkImportService = context.getBean(AppUserBulkImportService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public AppUserBulkImportDto bulkImport() throws IOException {
+        String prefix = "bulk_" + invocation++ + "_";
+        StringBuilder body = new StringBuilder(USERS_PER_INVOCATION * 64);
+        for (int i = 0; i < USERS_PER_INVOCATION; i++) {
+            body.append("{\"username\":\"").append(prefix).append(i)
+                    .append("\",\"password\":\"password\",\"fullname\":\"User ").append(i).append("\"}\n");
+        }
+        return bulkImportService.importUsers(new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public AppUser singleInserts() {
+        String prefix = "single_" + invocation++ + "_";
+        AppUser last = null;
+        for (int i = 0; i < USERS_PER_INVOCATION; i++) {
+            last = appUserService.addUser(new AppUser(null, prefix + i, "password", "User " + i, new ArrayList<>()));
+        }
+        return last;
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.zhanlun.springdemoproject.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUser;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing user and role lists the way the controllers return them,
+ * using an object mapper configured like Spring Boot's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+    @Param({"20", "100"})
+    private int size;
+
+    private ObjectWriter userWriter;
+    private ObjectWriter roleWriter;
+    private List<AppUser> users;
+    private List<AppRole> roles;
+
+    @Setup
+    public void setUp() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        userWriter = builder.build().writerFor(new TypeReference<List<AppUser>>() {});
+        roleWriter = builder.build().writerFor(new TypeReference<List<AppRole>>() {});
+        roles = new ArrayList<>();
+        for (long i = 1; i <= size; i++) {
+            roles.add(new AppRole(i, "ROLE_" + i, null));
+        }
+        users = new ArrayList<>();
+        for (long i = 1; i <= size; i++) {
+            users.add(new AppUser(i, "user" + i, "$2a$10$abcdefghijklmnopqrstuuO8QbR2UpNHUZZbR5h0Aa1BpWSoc9Lmi",
+                    "User " + i, List.of(roles.get(0), roles.get((int) (i % size)))));
+        }
+    }
+
+    @Benchmark
+    public byte[] writeUsers() throws Exception {
+        return userWriter.writeValueAsBytes(users);
+    }
+
+    @Benchmark
+    public byte[] writeRoles() throws Exception {
+        return roleWriter.writeValueAsBytes(roles);
+    }
+}
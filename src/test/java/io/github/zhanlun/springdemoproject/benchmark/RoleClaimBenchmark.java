@@ -0,0 +1,89 @@
+package io.github.zhanlun.springdemoproject.benchmark;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import io.github.zhanlun.springdemoproject.security.AuthoritySet;
+import io.github.zhanlun.springdemoproject.security.RoleClaimCodec;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleCatalog;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@code roles} name array with the compact {@code rb}/{@code rv}
+ * bitmask claim: token size is printed during setup, decode and
+ * verify+decode times are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoleClaimBenchmark {
+    @Param({"2", "8"})
+    public int userRoles;
+
+    private RoleClaimCodec arrayCodec;
+    private RoleClaimCodec compactCodec;
+    private JWTVerifier verifier;
+    private String arrayToken;
+    private String compactToken;
+
+    @Setup
+    public void setUp() {
+        List<AppRole> roles = new ArrayList<>();
+        for (long id = 1; id <= 16; id++) {
+            roles.add(new AppRole(id, "ROLE_BENCHMARK_" + id, null));
+        }
+        AppRoleCatalog catalog = new AppRoleCatalog(1, roles);
+        arrayCodec = new RoleClaimCodec(() -> catalog, false);
+        compactCodec = new RoleClaimCodec(() -> catalog, true);
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < userRoles; i++) {
+            names.add(roles.get(i * 2).getName());
+        }
+        AuthoritySet authorities = AuthoritySet.ofNames(names);
+        Algorithm algorithm = Algorithm.HMAC256("secret".getBytes());
+        verifier = JWT.require(algorithm).build();
+        Date expiresAt = new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+        arrayToken = sign(arrayCodec, authorities, expiresAt, algorithm);
+        compactToken = sign(compactCodec, authorities, expiresAt, algorithm);
+        System.out.printf("%n%d roles: array token %d bytes, compact token %d bytes%n",
+                userRoles, arrayToken.length(), compactToken.length());
+    }
+
+    private static String sign(RoleClaimCodec codec, AuthoritySet authorities, Date expiresAt, Algorithm algorithm) {
+        Map<String, Object> claims = new HashMap<>();
+        codec.writeRoles(claims, authorities);
+        return JWT.create().withSubject("benchmark").withExpiresAt(expiresAt).withPayload(claims).sign(algorithm);
+    }
+
+    @Benchmark
+    public AuthoritySet decodeArray() {
+        return arrayCodec.readRoles(JWT.decode(arrayToken));
+    }
+
+    @Benchmark
+    public AuthoritySet decodeCompact() {
+        return compactCodec.readRoles(JWT.decode(compactToken));
+    }
+
+    @Benchmark
+    public AuthoritySet verifyArray() {
+        return arrayCodec.readRoles(verifier.verify(arrayToken));
+    }
+
+    @Benchmark
+    public AuthoritySet verifyCompact() {
+        return compactCodec.readRoles(verifier.verify(compactToken));
+    }
+}
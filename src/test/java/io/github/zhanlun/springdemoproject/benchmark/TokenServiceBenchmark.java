@@ -0,0 +1,90 @@
+package io.github.zhanlun.springdemoproject.benchmark;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.zhanlun.springdemoproject.security.AuthoritySet;
+import io.github.zhanlun.springdemoproject.security.RevokedTokenRepository;
+import io.github.zhanlun.springdemoproject.security.RoleClaimCodec;
+import io.github.zhanlun.springdemoproject.security.TokenAuthenticationCache;
+import io.github.zhanlun.springdemoproject.security.TokenRevocationStore;
+import io.github.zhanlun.springdemoproject.security.TokenService;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleCatalog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.Authentication;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Sign and verify throughput of {@link TokenService} against the previous
+ * approach of building a new HMAC algorithm and verifier for every token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenServiceBenchmark {
+    private static final String ISSUER = "http://localhost/api/login";
+
+    private TokenService tokenService;
+    private AuthoritySet authorities;
+    private List<String> roleNames;
+    private String accessToken;
+
+    @Setup
+    public void setUp() {
+        AppRoleCatalog catalog = new AppRoleCatalog(1, List.of(
+                new AppRole(1L, "ROLE_USER", null),
+                new AppRole(2L, "ROLE_ADMIN", null)
+        ));
+        tokenService = new TokenService("secret", new RoleClaimCodec(() -> catalog, false),
+                new TokenAuthenticationCache(10_000, new SimpleMeterRegistry()),
+                new TokenRevocationStore(mock(RevokedTokenRepository.class), 10_000), new ObjectMapper());
+        roleNames = List.of("ROLE_USER", "ROLE_ADMIN");
+        authorities = AuthoritySet.ofNames(roleNames);
+        accessToken = tokenService.createAccessToken("benchmark", authorities, ISSUER);
+    }
+
+    @Benchmark
+    public String signWithTokenService() {
+        return tokenService.createAccessToken("benchmark", authorities, ISSUER);
+    }
+
+    @Benchmark
+    public String signPerRequestAlgorithm() {
+        Algorithm algorithm = Algorithm.HMAC256("secret".getBytes());
+        return JWT.create()
+                .withSubject("benchmark")
+                .withExpiresAt(new Date(System.currentTimeMillis() + 60 * 1000))
+                .withIssuer(ISSUER)
+                .withClaim("roles", roleNames)
+                .sign(algorithm);
+    }
+
+    @Benchmark
+    public DecodedJWT verifyWithTokenService() {
+        return tokenService.verify(accessToken);
+    }
+
+    @Benchmark
+    public DecodedJWT verifyPerRequestVerifier() {
+        Algorithm algorithm = Algorithm.HMAC256("secret".getBytes());
+        JWTVerifier verifier = JWT.require(algorithm).build();
+        return verifier.verify(accessToken);
+    }
+
+    @Benchmark
+    public Authentication authenticateCached() {
+        return tokenService.authenticate(accessToken);
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.zhanlun.springdemoproject.benchmark;
+
+import io.github.zhanlun.springdemoproject.LibraryManagementApplication;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleService;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUser;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUserRepository;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AppUserService#loadUserByUsername} against an in-memory H2 database
+ * seeded with users, with the user details cache on and off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class UserDetailsBenchmark {
+    private static final int USERS = 10_000;
+
+    @Param({"10000", "0"})
+    private int cacheSize;
+
+    private ConfigurableApplicationContext context;
+    private AppUserService appUserService;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(LibraryManagementApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:user-details-benchmark",
+                        "app.user-details-cache.max-size=" + cacheSize,
+                        "app.security.bcrypt.strength=4",
+                        "app.security.bcrypt.min-strength=4",
+                        "app.security.bcrypt.calibrate=false",
+                        "logging.level.root=WARN")
+                .run();
+        appUserService = context.getBean(AppUserService.class);
+        AppRoleService appRoleService = context.getBean(AppRoleService.class);
+        AppRole userRole = appRoleService.saveRole(new AppRole(null, "ROLE_USER", null));
+        AppRole adminRole = appRoleService.saveRole(new AppRole(null, "ROLE_ADMIN", null));
+
+        // insert directly so seeding does not pay for BCrypt
+        List<AppUser> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            List<AppRole> roles = i % 10 == 0 ? List.of(userRole, adminRole) : List.of(userRole);
+            users.add(new AppUser(null, username(i), "password", "User " + i, new ArrayList<>(roles)));
+        }
+        context.getBean(AppUserRepository.class).saveAll(users);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserDetails loadSameUser() {
+        return appUserService.loadUserByUsername(username(0));
+    }
+
+    @Benchmark
+    public UserDetails loadRandomUser() {
+        return appUserService.loadUserByUsername(username(ThreadLocalRandom.current().nextInt(USERS)));
+    }
+
+    private static String username(int i) {
+        return "benchmark_user_" + i;
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.zhanlun.springdemoproject.jfr;
+
+import io.github.zhanlun.springdemoproject.BaseControllerTest;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleRepository;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUser;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUserRepository;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.security.test.context.support.WithMockUser;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class FlightRecorderEventsTest extends BaseControllerTest {
+    @Autowired
+    private AppUserRepository appUserRepository;
+    @Autowired
+    private AppRoleRepository appRoleRepository;
+
+    @AfterEach
+    void tearDown() {
+        appUserRepository.deleteAll();
+        appRoleRepository.deleteAll();
+    }
+
+    @Test
+    @WithMockUser(username = "jfr_user", roles = {"USER"})
+    void canRecordServiceAndRepositoryEvents() throws Exception {
+        AppRole role = appRoleRepository.save(new AppRole(null, "ROLE_USER", new ArrayList<>()));
+        AppUser user = appUserRepository.save(new AppUser(null, "jfr_user", "password", "JFR", List.of(role)));
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(UserServiceEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(RepositoryEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            this.get("/api/users/" + user.getId()).andExpect(status().isOk());
+            recording.stop();
+            events = read(recording);
+        }
+
+        RecordedEvent serviceEvent = find(events, "io.github.zhanlun.springdemoproject.UserService");
+        assertThat(serviceEvent.getString("method")).isEqualTo("getUser");
+        assertThat(serviceEvent.getString("endpoint")).isEqualTo("GET /api/users/" + user.getId());
+        assertThat(serviceEvent.getLong("usernameHash")).isEqualTo(AppEvent.hash("jfr_user"));
+        assertThat(serviceEvent.getInt("roleCount")).isEqualTo(1);
+        RecordedEvent repositoryEvent = find(events, "io.github.zhanlun.springdemoproject.Repository");
+        assertThat(repositoryEvent.getString("repository")).isEqualTo("AppUserRepository");
+        assertThat(repositoryEvent.getString("method")).isEqualTo("findById");
+    }
+
+    @Test
+    void canRecordWithBundledSettings() throws Exception {
+        Configuration configuration;
+        try (Reader reader = new InputStreamReader(new ClassPathResource("jfr/spring-demo.jfc").getInputStream(), StandardCharsets.UTF_8)) {
+            configuration = Configuration.create(reader);
+        }
+
+        assertThat(configuration.getSettings())
+                .containsEntry("io.github.zhanlun.springdemoproject.TokenVerification#threshold", "1 ms")
+                .containsEntry("jdk.JavaMonitorEnter#threshold", "10 ms");
+        try (Recording recording = new Recording(configuration)) {
+            recording.start();
+            recording.stop();
+        }
+    }
+
+    private static List<RecordedEvent> read(Recording recording) throws Exception {
+        Path file = Files.createTempFile("events", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+        assertThat(matching).isNotEmpty();
+        return matching.get(0);
+    }
+}
@@ -0,0 +1,357 @@
+package io.github.zhanlun.springdemoproject.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.zhanlun.springdemoproject.LibraryManagementApplication;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleService;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUserBulkImportDto;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUserBulkImportService;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUserService;
+import io.github.zhanlun.springdemoproject.usermgmt.user.RoleMembershipDto;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Boots the application on a random port, seeds users and drives
+ * {@code /api/login}, {@code /api/users/{id}} and {@code /api/roles} with
+ * bearer tokens, then reports latency percentiles and throughput per
+ * endpoint. Configured with system properties:
+ *
+ * <pre>
+ * loadtest.endpoints    login,user,roles
+ * loadtest.concurrency  worker threads per endpoint (16)
+ * loadtest.rate         open-loop arrivals per second per endpoint, 0 for closed loop (0)
+ * loadtest.warmup       ISO-8601 duration discarded before measuring (PT5S)
+ * loadtest.duration     ISO-8601 measured duration (PT30S)
+ * loadtest.users        seeded users (100)
+ * loadtest.budgets      e.g. login.p99=500,user.p999=50 in milliseconds
+ * loadtest.max-error-rate  fraction of failed requests allowed (0.01)
+ * </pre>
+ * <p>
+ * In open-loop mode latency is measured from when a request was due, not
+ * when it was sent, so a stalled server is not hidden by the load
+ * generator slowing down with it. The process exits with status 1 when a
+ * budget or the error rate is exceeded.
+ */
+public class LoadTestRunner {
+    private static final String PASSWORD = "load-test-password";
+    private static final String USERNAME_PREFIX = "loadtest_user_";
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final List<String> endpoints = Arrays.asList(property("loadtest.endpoints", "login,user,roles").split(","));
+    private final int concurrency = Integer.parseInt(property("loadtest.concurrency", "16"));
+    private final double rate = Double.parseDouble(property("loadtest.rate", "0"));
+    private final Duration warmup = Duration.parse(property("loadtest.warmup", "PT5S"));
+    private final Duration duration = Duration.parse(property("loadtest.duration", "PT30S"));
+    private final int userCount = Integer.parseInt(property("loadtest.users", "100"));
+    private final Map<String, Double> budgets = parseBudgets(property("loadtest.budgets", ""));
+    private final double maxErrorRate = Double.parseDouble(property("loadtest.max-error-rate", "0.01"));
+    private final File outputDirectory = new File(property("loadtest.output", "target/loadtest"));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newCachedThreadPool())
+            .build();
+    private final List<SeededUser> users = new ArrayList<>();
+    private String baseUrl;
+
+    public static void main(String[] args) throws Exception {
+        boolean passed = new LoadTestRunner().run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        try (ConfigurableApplicationContext context = start()) {
+            baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+            seed(context);
+            // access tokens live for a minute, so keep them fresh for longer runs
+            ScheduledExecutorService renewal = Executors.newSingleThreadScheduledExecutor();
+            renewal.scheduleWithFixedDelay(this::renewTokens, 30, 30, TimeUnit.SECONDS);
+
+            List<Scenario> scenarios = new ArrayList<>();
+            for (String endpoint : endpoints) {
+                scenarios.add(new Scenario(endpoint.trim()));
+            }
+            // warm up all endpoints together, then measure them together so they compete as in production
+            drive(scenarios, warmup);
+            scenarios.forEach(Scenario::reset);
+            drive(scenarios, duration);
+            renewal.shutdownNow();
+
+            outputDirectory.mkdirs();
+            boolean passed = true;
+            for (Scenario scenario : scenarios) {
+                passed &= scenario.report(System.out);
+            }
+            return passed;
+        }
+    }
+
+    private ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(LibraryManagementApplication.class)
+                .profiles("test")
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:loadtest",
+                        "logging.level.root=WARN",
+                        // measure the endpoints, not the rate limiter
+                        "app.security.rate-limit.login.ip.capacity=1000000000",
+                        "app.security.rate-limit.login.ip.refill-per-second=1000000000",
+                        "app.security.rate-limit.login.username.capacity=1000000000",
+                        "app.security.rate-limit.login.username.refill-per-second=1000000000")
+                .run();
+    }
+
+    private void seed(ConfigurableApplicationContext context) throws Exception {
+        AppRoleService appRoleService = context.getBean(AppRoleService.class);
+        AppRole userRole = appRoleService.saveRole(new AppRole(null, "ROLE_USER", null));
+
+        List<Map<String, String>> rows = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            rows.add(Map.of("username", USERNAME_PREFIX + i, "password", PASSWORD, "fullname", "Load Test " + i));
+        }
+        AppUserBulkImportDto imported = context.getBean(AppUserBulkImportService.class)
+                .importUsers(new ByteArrayInputStream(objectMapper.writeValueAsBytes(rows)));
+        context.getBean(AppUserService.class).addRoleToUsers(userRole.getId(), new RoleMembershipDto(null, USERNAME_PREFIX));
+
+        for (AppUserBulkImportDto.Row row : imported.results) {
+            SeededUser user = new SeededUser(row.username, row.id);
+            logIn(user);
+            users.add(user);
+        }
+        System.out.println("Seeded " + users.size() + " users at " + baseUrl);
+    }
+
+    private void logIn(SeededUser user) throws Exception {
+        HttpResponse<String> response = client.send(login(user), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Could not log in " + user.username + ": " + response.statusCode());
+        }
+        user.accessToken = objectMapper.readTree(response.body()).get("access_token").asText();
+    }
+
+    private void renewTokens() {
+        for (SeededUser user : users) {
+            try {
+                logIn(user);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // keep the old token; requests will show up as errors once it expires
+            }
+        }
+    }
+
+    private void drive(List<Scenario> scenarios, Duration runFor) throws InterruptedException {
+        if (runFor.isZero()) {
+            return;
+        }
+        long endNanos = System.nanoTime() + runFor.toNanos();
+        List<Thread> threads = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            threads.addAll(rate > 0 ? scenario.openLoop(endNanos) : scenario.closedLoop(endNanos));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private HttpRequest request(String endpoint, SeededUser user) throws Exception {
+        switch (endpoint) {
+            case "login":
+                return login(user);
+            case "user":
+                return authorized(user, "/api/users/" + user.id);
+            case "roles":
+                return authorized(user, "/api/roles");
+            default:
+                throw new IllegalArgumentException("Unknown endpoint " + endpoint + ", expected login, user or roles");
+        }
+    }
+
+    private HttpRequest login(SeededUser user) throws Exception {
+        byte[] body = objectMapper.writeValueAsBytes(Map.of("username", user.username, "password", PASSWORD));
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private HttpRequest authorized(SeededUser user, String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Authorization", "Bearer " + user.accessToken)
+                .GET()
+                .build();
+    }
+
+    private static String property(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+
+    private static Map<String, Double> parseBudgets(String spec) {
+        Map<String, Double> budgets = new LinkedHashMap<>();
+        for (String entry : spec.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] keyAndMillis = entry.trim().split("=");
+            if (keyAndMillis.length != 2) {
+                throw new IllegalArgumentException("Budget must look like endpoint.p99=millis: " + entry);
+            }
+            budgets.put(keyAndMillis[0], Double.parseDouble(keyAndMillis[1]));
+        }
+        return budgets;
+    }
+
+    private static class SeededUser {
+        private final String username;
+        private final Long id;
+        private volatile String accessToken;
+
+        private SeededUser(String username, Long id) {
+            this.username = username;
+            this.id = id;
+        }
+    }
+
+    private class Scenario {
+        private final String endpoint;
+        private final Histogram histogram = new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3);
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong next = new AtomicLong();
+
+        private Scenario(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        private void reset() {
+            histogram.reset();
+            errors.set(0);
+        }
+
+        private List<Thread> closedLoop(long endNanos) {
+            List<Thread> threads = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                threads.add(new Thread(() -> {
+                    while (System.nanoTime() < endNanos) {
+                        send(System.nanoTime());
+                    }
+                }, "loadtest-" + endpoint + "-" + i));
+            }
+            return threads;
+        }
+
+        /**
+         * One thread issues requests on a fixed schedule and hands them to
+         * the workers; if they fall behind, the wait counts towards latency.
+         */
+        private List<Thread> openLoop(long endNanos) {
+            ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+            long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            return List.of(new Thread(() -> {
+                long dueNanos = System.nanoTime();
+                while (dueNanos < endNanos) {
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        LockSupport.parkNanos(waitNanos);
+                    }
+                    long intendedStart = dueNanos;
+                    workers.execute(() -> send(intendedStart));
+                    dueNanos += intervalNanos;
+                }
+                workers.shutdown();
+                try {
+                    workers.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "loadtest-" + endpoint + "-dispatcher"));
+        }
+
+        private void send(long intendedStartNanos) {
+            SeededUser user = users.get((int) (next.getAndIncrement() % users.size()));
+            boolean ok;
+            try {
+                HttpResponse<Void> response = client.send(request(endpoint, user), HttpResponse.BodyHandlers.discarding());
+                ok = response.statusCode() / 100 == 2;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                ok = false;
+            }
+            histogram.recordValue(Math.min(System.nanoTime() - intendedStartNanos, HIGHEST_TRACKABLE_NANOS));
+            if (!ok) {
+                errors.incrementAndGet();
+            }
+        }
+
+        private boolean report(PrintStream out) throws Exception {
+            long count = histogram.getTotalCount();
+            double seconds = duration.toNanos() / 1e9;
+            double errorRate = count == 0 ? 1 : (double) errors.get() / count;
+            out.printf(Locale.ROOT, "%-6s requests=%d errors=%d throughput=%.1f/s p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms%n",
+                    endpoint, count, errors.get(), count / seconds,
+                    millisAt(50), millisAt(99), millisAt(99.9), histogram.getMaxValue() / 1e6);
+            try (PrintStream file = new PrintStream(new File(outputDirectory, endpoint + ".hgrm"), StandardCharsets.UTF_8)) {
+                histogram.outputPercentileDistribution(file, 1e6);
+            }
+
+            boolean passed = true;
+            if (errorRate > maxErrorRate) {
+                out.printf(Locale.ROOT, "FAILED %s: error rate %.4f is above %.4f%n", endpoint, errorRate, maxErrorRate);
+                passed = false;
+            }
+            for (Map.Entry<String, Double> budget : budgets.entrySet()) {
+                if (!budget.getKey().startsWith(endpoint + ".")) {
+                    continue;
+                }
+                String percentile = budget.getKey().substring(endpoint.length() + 1);
+                double actual = millisAt(percentileOf(percentile));
+                if (actual > budget.getValue()) {
+                    out.printf(Locale.ROOT, "FAILED %s: %s %.2fms is above budget %.2fms%n", endpoint, percentile, actual, budget.getValue());
+                    passed = false;
+                }
+            }
+            return passed;
+        }
+
+        private double millisAt(double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1e6;
+        }
+
+        private double percentileOf(String name) {
+            switch (name) {
+                case "p50":
+                    return 50;
+                case "p99":
+                    return 99;
+                case "p999":
+                    return 99.9;
+                default:
+                    throw new IllegalArgumentException("Unknown percentile " + name + ", expected p50, p99 or p999");
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.zhanlun.springdemoproject.persistence;
+
+import io.github.zhanlun.springdemoproject.BaseControllerTest;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.util.ArrayList;
+
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class PersistenceStatisticsControllerTest extends BaseControllerTest {
+    @Autowired
+    private AppRoleRepository appRoleRepository;
+    @Autowired
+    private PersistenceStatisticsService persistenceStatisticsService;
+
+    @AfterEach
+    void tearDown() {
+        PersistenceSettingsDto settings = new PersistenceSettingsDto();
+        settings.enabled = false;
+        settings.slowQueryThresholdMillis = 200L;
+        persistenceStatisticsService.updateSettings(settings);
+        persistenceStatisticsService.clear();
+        appRoleRepository.deleteAll();
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN"})
+    void canEnableStatisticsAtRuntime() throws Exception {
+        // saved first, so the catalog rebuild after the insert is not counted
+        appRoleRepository.save(new AppRole(null, "ROLE_TEST", new ArrayList<>()));
+
+        this.put("{\"enabled\":true,\"slowQueryThresholdMillis\":0}")
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.enabled").value(true))
+                .andExpect(jsonPath("$.slowQueryThresholdMillis").value(0));
+
+        appRoleRepository.findByName("ROLE_TEST");
+
+        this.getOk("/api/admin/persistence/statistics")
+                .andExpect(jsonPath("$.queryExecutionCount").value(1))
+                .andExpect(jsonPath("$.queries[0].executionCount").value(1))
+                .andExpect(jsonPath("$.prepareStatementCount").isNumber())
+                .andExpect(jsonPath("$.slowQueries[0].sql").isString())
+                .andExpect(jsonPath("$.slowQueries[?(@.sql =~ /select.*/i)].parameters[0]").value("String"));
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN"})
+    void canClearStatistics() throws Exception {
+        this.put("{\"enabled\":true}");
+        appRoleRepository.findByName("ROLE_TEST");
+
+        this.delete("/api/admin/persistence/statistics", null)
+                .andExpect(status().isNoContent());
+
+        this.getOk("/api/admin/persistence/statistics")
+                .andExpect(jsonPath("$.queryExecutionCount").value(0))
+                .andExpect(jsonPath("$.slowQueries").isEmpty());
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_USER"})
+    void forbiddenToGetStatistics() throws Exception {
+        this.getForbidden("/api/admin/persistence/statistics");
+    }
+
+    private ResultActions put(String json) throws Exception {
+        return this.mockMvc.perform(MockMvcRequestBuilders.put("/api/admin/persistence/statistics")
+                        .content(json)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print());
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.zhanlun.springdemoproject.persistence;
+
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleRepository;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUser;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUserRepository;
+import io.github.zhanlun.springdemoproject.usermgmt.user.AppUserService;
+import io.github.zhanlun.springdemoproject.util.QueryCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class SecondLevelCacheTest {
+    @Autowired
+    private AppUserRepository appUserRepository;
+    @Autowired
+    private AppRoleRepository appRoleRepository;
+    @Autowired
+    private AppUserService appUserService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    void tearDown() {
+        appUserRepository.deleteAll();
+        appRoleRepository.deleteAll();
+    }
+
+    @Test
+    void repeatedLookupsAreAnsweredFromCache() {
+        // given
+        AppRole role = appRoleRepository.save(new AppRole(null, "ROLE_TEST", new ArrayList<>()));
+        AppUser user = appUserRepository.save(new AppUser(null, "cached_user", "password", "FULL NAME", List.of(role)));
+        appUserRepository.findByUsername("cached_user");
+        appUserRepository.findById(user.getId());
+        double hits = hits(SecondLevelCacheConfig.USER_REGION);
+
+        // when
+        QueryCounter.reset();
+        AppUser byUsername = appUserRepository.findByUsername("cached_user").orElseThrow();
+        AppUser byId = appUserRepository.findById(user.getId()).orElseThrow();
+
+        // then
+        assertThat(QueryCounter.count()).isZero();
+        assertThat(byUsername.getRoles()).extracting(AppRole::getName).containsExactly("ROLE_TEST");
+        assertThat(byId.getRoles()).extracting(AppRole::getName).containsExactly("ROLE_TEST");
+        assertThat(hits(SecondLevelCacheConfig.USER_REGION)).isGreaterThan(hits);
+        assertThat(meterRegistry.get("cache.hit.ratio").tag("cache", SecondLevelCacheConfig.USER_REGION).gauge().value())
+                .isBetween(0.0, 1.0);
+    }
+
+    @Test
+    void roleMembershipChangesThroughServiceAreVisible() {
+        // given
+        AppRole role = appRoleRepository.save(new AppRole(null, "ROLE_TEST", new ArrayList<>()));
+        AppUser user = appUserRepository.save(new AppUser(null, "cached_user", "password", "FULL NAME", new ArrayList<>()));
+        assertThat(appUserRepository.findById(user.getId()).orElseThrow().getRoles()).isEmpty();
+        assertThat(appUserRepository.findByUsername("cached_user").orElseThrow().getRoles()).isEmpty();
+
+        // when
+        appUserService.addRoleToUser(user.getId(), role.getId());
+
+        // then
+        assertThat(appUserRepository.findById(user.getId()).orElseThrow().getRoles()).hasSize(1);
+        assertThat(appUserRepository.findByUsername("cached_user").orElseThrow().getRoles()).hasSize(1);
+
+        // when
+        appUserService.removeRoleFromUser(user.getId(), role.getId());
+
+        // then
+        assertThat(appUserRepository.findById(user.getId()).orElseThrow().getRoles()).isEmpty();
+        assertThat(appUserRepository.findByUsername("cached_user").orElseThrow().getRoles()).isEmpty();
+    }
+
+    private double hits(String region) {
+        return meterRegistry.get("cache.gets").tag("cache", region).tag("result", "hit").functionCounter().count();
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.zhanlun.springdemoproject.persistence;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlowQueryDataSourceTest {
+    private SlowQueryLog slowQueryLog;
+    private SlowQueryDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:slow-query-test;DB_CLOSE_DELAY=-1");
+        slowQueryLog = new SlowQueryLog(new ObjectMapper(), 0, 2);
+        dataSource = new SlowQueryDataSource(h2, slowQueryLog);
+        try (Connection connection = h2.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("create table if not exists item (id bigint, name varchar(50))");
+        }
+    }
+
+    @Test
+    void recordsBindParameterTypesWithoutValues() throws Exception {
+        // given
+        String sql = "select * from item where id = ? and name = ?";
+
+        // when
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, 42L);
+            statement.setString(2, "secret");
+            statement.executeQuery().close();
+        }
+
+        // then
+        List<SlowQueryLog.SlowQuery> recent = slowQueryLog.getRecent();
+        assertThat(recent).hasSize(1);
+        assertThat(recent.get(0).sql).isEqualTo(sql);
+        assertThat(recent.get(0).parameters).containsExactly("Long", "String");
+    }
+
+    @Test
+    void recordsBatchSize() throws Exception {
+        // given
+        String sql = "insert into item (id, name) values (?, ?)";
+
+        // when
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (long id = 0; id < 3; id++) {
+                statement.setLong(1, id);
+                statement.setNull(2, Types.VARCHAR);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+
+        // then
+        SlowQueryLog.SlowQuery slowQuery = slowQueryLog.getRecent().get(0);
+        assertThat(slowQuery.batchSize).isEqualTo(3);
+        assertThat(slowQuery.parameters).containsExactly("Long", "Null");
+    }
+
+    @Test
+    void keepsOnlyTheMostRecentAndSkipsFastQueriesAboveThreshold() throws Exception {
+        // given
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("select 1");
+            statement.execute("select 2");
+            statement.execute("select 3");
+        }
+        assertThat(slowQueryLog.getRecent()).extracting(q -> q.sql).containsExactly("select 2", "select 3");
+
+        // when
+        slowQueryLog.setThresholdMillis(60_000);
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("select 4");
+        }
+
+        // then
+        assertThat(slowQueryLog.getRecent()).extracting(q -> q.sql).containsExactly("select 2", "select 3");
+    }
+}
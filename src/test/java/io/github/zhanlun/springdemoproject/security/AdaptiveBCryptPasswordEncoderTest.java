@@ -0,0 +1,86 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class AdaptiveBCryptPasswordEncoderTest {
+    private final AdaptiveBCryptPasswordEncoder underTest = new AdaptiveBCryptPasswordEncoder(6, 5);
+
+    @Test
+    void canEncodeWithConfiguredStrength() {
+        // when
+        String encoded = underTest.encode("password");
+
+        // then
+        assertThat(AdaptiveBCryptPasswordEncoder.costOf(encoded)).isEqualTo(6);
+        assertThat(underTest.matches("password", encoded)).isTrue();
+    }
+
+    @Test
+    void willUpgradeAnyCostOtherThanTarget() {
+        // given
+        String belowFloor = new BCryptPasswordEncoder(4).encode("password");
+        String atFloor = new BCryptPasswordEncoder(5).encode("password");
+        String atTarget = new BCryptPasswordEncoder(6).encode("password");
+        String stronger = new BCryptPasswordEncoder(7).encode("password");
+
+        // then
+        assertThat(underTest.upgradeEncoding(belowFloor)).isTrue();
+        assertThat(underTest.upgradeEncoding(atFloor)).isTrue();
+        assertThat(underTest.upgradeEncoding(atTarget)).isFalse();
+        assertThat(underTest.upgradeEncoding(stronger)).isTrue();
+        assertThat(underTest.upgradeEncoding("{noop}password")).isFalse();
+    }
+
+    @Test
+    void willReEncodeHashBelowTargetOnLogin() {
+        // given
+        String atFloor = new BCryptPasswordEncoder(5).encode("password");
+        UserDetails user = User.withUsername("user_test").password(atFloor).authorities("ROLE_USER").build();
+        UserDetailsPasswordService passwordService = mock(UserDetailsPasswordService.class);
+        given(passwordService.updatePassword(any(), anyString())).willAnswer(invocation -> invocation.getArgument(0));
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setPasswordEncoder(underTest);
+        provider.setUserDetailsService(username -> user);
+        provider.setUserDetailsPasswordService(passwordService);
+
+        // when
+        provider.authenticate(new UsernamePasswordAuthenticationToken("user_test", "password"));
+
+        // then
+        ArgumentCaptor<String> newPassword = ArgumentCaptor.forClass(String.class);
+        verify(passwordService).updatePassword(any(), newPassword.capture());
+        assertThat(AdaptiveBCryptPasswordEncoder.costOf(newPassword.getValue())).isEqualTo(6);
+        assertThat(underTest.matches("password", newPassword.getValue())).isTrue();
+    }
+
+    @Test
+    void willThrowWhenMinStrengthIsAboveStrength() {
+        assertThatThrownBy(() -> new AdaptiveBCryptPasswordEncoder(10, 12))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("min strength 12 is above strength 10");
+    }
+
+    @Test
+    void canCalibrateStrengthWithinBounds() {
+        // when
+        int calibrated = AdaptiveBCryptPasswordEncoder.calibrateStrength(1, 4, 6);
+
+        // then
+        assertThat(calibrated).isBetween(4, 6);
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.PAYLOAD_TOO_LARGE;
+
+class LoginCredentialsReaderTest {
+    private final LoginCredentialsReader underTest = new LoginCredentialsReader(new ObjectMapper(), 128);
+
+    @Test
+    void canReadCredentials() throws Exception {
+        // when
+        LoginCredentials credentials = underTest.read(body("{\"x\":{\"a\":[1]},\"username\":\"TEST_USER\",\"password\":\"TEST_PASSWORD\"}"), -1);
+
+        // then
+        assertThat(credentials.getUsername()).isEqualTo("TEST_USER");
+        assertThat(credentials.getPassword()).isEqualTo("TEST_PASSWORD");
+    }
+
+    @Test
+    void willRejectDeclaredOversizedBodyWithoutReading() {
+        // given
+        InputStream body = new InputStream() {
+            @Override
+            public int read() {
+                throw new AssertionError("body should not be read");
+            }
+        };
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.read(body, 129))
+                .isInstanceOf(InvalidLoginRequestException.class)
+                .extracting("status").isEqualTo(PAYLOAD_TOO_LARGE);
+    }
+
+    @Test
+    void willRejectOversizedBodyWithoutContentLength() {
+        // given
+        String password = "x".repeat(200);
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.read(body("{\"username\":\"TEST_USER\",\"password\":\"" + password + "\"}"), -1))
+                .isInstanceOf(InvalidLoginRequestException.class)
+                .extracting("status").isEqualTo(PAYLOAD_TOO_LARGE);
+    }
+
+    @Test
+    void willRejectMalformedBody() {
+        assertThatThrownBy(() -> underTest.read(body("{\"username\":\"TEST_USER\","), -1))
+                .isInstanceOf(InvalidLoginRequestException.class)
+                .extracting("status").isEqualTo(BAD_REQUEST);
+        assertThatThrownBy(() -> underTest.read(body("[\"TEST_USER\"]"), -1))
+                .isInstanceOf(InvalidLoginRequestException.class)
+                .extracting("status").isEqualTo(BAD_REQUEST);
+        assertThatThrownBy(() -> underTest.read(body("{\"username\":\"TEST_USER\"}"), -1))
+                .isInstanceOf(InvalidLoginRequestException.class)
+                .extracting("status").isEqualTo(BAD_REQUEST);
+    }
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class PasswordHashingExceptionHandlerTest {
+    private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new RejectingController())
+            .setControllerAdvice(new PasswordHashingExceptionHandler())
+            .build();
+
+    @Test
+    void canAddRetryAfterWhenHashingIsRejected() throws Exception {
+        mockMvc.perform(post("/api/users"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "3"))
+                .andExpect(jsonPath("$.error_message").value("Too many concurrent password operations"));
+    }
+
+    @RestController
+    static class RejectingController {
+        @PostMapping("/api/users")
+        void addUser() {
+            throw new PasswordHashingRejectedException("Too many concurrent password operations", 3);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleCatalog;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RoleClaimCodecTest {
+    private final Algorithm algorithm = Algorithm.HMAC256("secret".getBytes());
+    private final AtomicReference<AppRoleCatalog> catalog = new AtomicReference<>(new AppRoleCatalog(1, List.of(
+            new AppRole(1L, "ROLE_USER", null),
+            new AppRole(2L, "ROLE_ADMIN", null),
+            new AppRole(3L, "ROLE_AUDITOR", null)
+    )));
+
+    @Test
+    void canRoundTripCompactRoles() {
+        // given
+        RoleClaimCodec underTest = new RoleClaimCodec(catalog::get, true);
+
+        // when
+        DecodedJWT token = encode(underTest, AuthoritySet.ofNames("ROLE_USER", "ROLE_AUDITOR"));
+
+        // then
+        assertThat(token.getClaim(RoleClaimCodec.ROLES_CLAIM).isNull()).isTrue();
+        assertThat(token.getClaim(RoleClaimCodec.ROLE_BITS_CLAIM).asLong()).isEqualTo(0b101L);
+        assertThat(underTest.readRoles(token)).extracting(GrantedAuthority::getAuthority)
+                .containsExactlyInAnyOrder("ROLE_USER", "ROLE_AUDITOR");
+    }
+
+    @Test
+    void canReadRoleArrayInCompactMode() {
+        // given
+        DecodedJWT token = encode(new RoleClaimCodec(catalog::get, false), AuthoritySet.ofNames("ROLE_ADMIN"));
+
+        // when
+        AuthoritySet roles = new RoleClaimCodec(catalog::get, true).readRoles(token);
+
+        // then
+        assertThat(token.getClaim(RoleClaimCodec.ROLE_BITS_CLAIM).isNull()).isTrue();
+        assertThat(roles.hasAuthority("ROLE_ADMIN")).isTrue();
+    }
+
+    @Test
+    void willFallBackToRoleArrayForRolesOutsideCatalog() {
+        // given
+        RoleClaimCodec underTest = new RoleClaimCodec(catalog::get, true);
+
+        // when
+        DecodedJWT token = encode(underTest, AuthoritySet.ofNames("ROLE_USER", "ROLE_NOT_IN_CATALOG"));
+
+        // then
+        assertThat(token.getClaim(RoleClaimCodec.ROLE_BITS_CLAIM).isNull()).isTrue();
+        assertThat(underTest.readRoles(token).hasAuthority("ROLE_NOT_IN_CATALOG")).isTrue();
+    }
+
+    @Test
+    void willRejectCompactRolesFromOlderCatalog() {
+        // given
+        RoleClaimCodec underTest = new RoleClaimCodec(catalog::get, true);
+        DecodedJWT token = encode(underTest, AuthoritySet.ofNames("ROLE_ADMIN"));
+        catalog.set(new AppRoleCatalog(2, List.of(
+                new AppRole(1L, "ROLE_USER", null),
+                new AppRole(4L, "ROLE_ADMIN", null)
+        )));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.readRoles(token))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessageContaining("out of date");
+    }
+
+    private DecodedJWT encode(RoleClaimCodec codec, AuthoritySet authorities) {
+        Map<String, Object> claims = new HashMap<>();
+        codec.writeRoles(claims, authorities);
+        return JWT.decode(JWT.create().withSubject("TEST_USER").withPayload(claims).sign(algorithm));
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenAuthenticationCacheTest {
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TokenAuthenticationCache underTest = new TokenAuthenticationCache(100, meterRegistry, now::get);
+
+    @Test
+    void canServeFreshTokenForEveryHit() {
+        // given
+        underTest.put("token", "TEST_USER", AuthoritySet.ofNames("ROLE_USER"), new Date(now.get() + 60_000));
+
+        // when
+        UsernamePasswordAuthenticationToken first = underTest.get("token");
+        first.setDetails("mutated by one request");
+        UsernamePasswordAuthenticationToken second = underTest.get("token");
+
+        // then
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getDetails()).isNull();
+        assertThat(second.getName()).isEqualTo("TEST_USER");
+        assertThat(second.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_USER");
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "token-authentication").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void willNotServeTokenAtItsExpiry() {
+        // given
+        underTest.put("token", "TEST_USER", AuthoritySet.ofNames("ROLE_USER"), new Date(now.get() + 60_000));
+        assertThat(underTest.get("token")).isNotNull();
+
+        // when
+        now.addAndGet(60_000);
+
+        // then
+        assertThat(underTest.get("token")).isNull();
+    }
+
+    @Test
+    void willNotServeInvalidatedToken() {
+        // given
+        underTest.put("token", "TEST_USER", AuthoritySet.ofNames("ROLE_USER"), new Date(now.get() + 60_000));
+
+        // when
+        underTest.invalidate("token");
+
+        // then
+        assertThat(underTest.get("token")).isNull();
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketRateLimiterTest {
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void willRejectWhenBucketIsEmpty() {
+        // given
+        TokenBucketRateLimiter underTest = new TokenBucketRateLimiter(2, 1, 100, 4, clock::get);
+
+        // when
+        long first = underTest.tryAcquire("TEST_KEY");
+        long second = underTest.tryAcquire("TEST_KEY");
+        long third = underTest.tryAcquire("TEST_KEY");
+
+        // then
+        assertThat(first).isZero();
+        assertThat(second).isZero();
+        assertThat(third).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThat(underTest.tryAcquire("OTHER_KEY")).isZero();
+    }
+
+    @Test
+    void canRefillLazily() {
+        // given
+        TokenBucketRateLimiter underTest = new TokenBucketRateLimiter(1, 2, 100, 4, clock::get);
+        underTest.tryAcquire("TEST_KEY");
+
+        // when
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(250));
+        long halfRefilled = underTest.tryAcquire("TEST_KEY");
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(250));
+        long refilled = underTest.tryAcquire("TEST_KEY");
+
+        // then
+        assertThat(halfRefilled).isEqualTo(TimeUnit.MILLISECONDS.toNanos(250));
+        assertThat(refilled).isZero();
+    }
+
+    @Test
+    void willEvictLeastRecentlyUsedKeys() {
+        // given
+        TokenBucketRateLimiter underTest = new TokenBucketRateLimiter(1, 1, 2, 1, clock::get);
+        underTest.tryAcquire("IDLE_KEY");
+        underTest.tryAcquire("ACTIVE_KEY");
+
+        // when
+        underTest.tryAcquire("NEW_KEY");
+
+        // then
+        assertThat(underTest.size()).isEqualTo(2);
+        assertThat(underTest.tryAcquire("IDLE_KEY")).isZero();
+        assertThat(underTest.tryAcquire("NEW_KEY")).isPositive();
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TokenRevocationStoreTest {
+    @Mock
+    private RevokedTokenRepository repository;
+    private TokenRevocationStore underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new TokenRevocationStore(repository, 100);
+    }
+
+    @Test
+    void canRevokeToken() {
+        // given
+        long expiresAt = System.currentTimeMillis() + 60_000;
+
+        // when
+        underTest.revoke("header.payload.signature1", expiresAt);
+
+        // then
+        ArgumentCaptor<RevokedToken> captor = ArgumentCaptor.forClass(RevokedToken.class);
+        verify(repository).save(captor.capture());
+        assertThat(captor.getValue().getSignature()).isEqualTo("signature1");
+        assertThat(captor.getValue().getExpiresAtMillis()).isEqualTo(expiresAt);
+        assertThat(underTest.isRevoked("header.payload.signature1")).isTrue();
+        assertThat(underTest.isRevoked("header.payload.signature2")).isFalse();
+    }
+
+    @Test
+    void willNotRevokeExpiredToken() {
+        // when
+        underTest.revoke("header.payload.signature1", System.currentTimeMillis() - 1);
+
+        // then
+        verify(repository, never()).save(any());
+        assertThat(underTest.isRevoked("header.payload.signature1")).isFalse();
+    }
+
+    @Test
+    void canLoadPersistedRevocations() {
+        // given
+        when(repository.findByExpiresAtMillisGreaterThan(anyLong()))
+                .thenReturn(List.of(new RevokedToken("signature1", System.currentTimeMillis() + 60_000)));
+
+        // when
+        underTest.load();
+
+        // then
+        assertThat(underTest.isRevoked("header.payload.signature1")).isTrue();
+    }
+
+    @Test
+    void canPruneExpiredRevocations() {
+        // given
+        when(repository.findByExpiresAtMillisGreaterThan(anyLong())).thenReturn(List.of(
+                new RevokedToken("expired", System.currentTimeMillis() - 1),
+                new RevokedToken("current", System.currentTimeMillis() + 60_000)
+        ));
+        underTest.load();
+
+        // when
+        underTest.prune();
+
+        // then
+        verify(repository).deleteExpired(anyLong());
+        assertThat(underTest.getRevokedCount()).isEqualTo(1);
+        assertThat(underTest.isRevoked("header.payload.expired")).isFalse();
+        assertThat(underTest.isRevoked("header.payload.current")).isTrue();
+    }
+
+    @Test
+    void canGrowBeyondExpectedEntries() {
+        // given
+        long expiresAt = System.currentTimeMillis() + 60_000;
+
+        // when
+        for (int i = 0; i < 1_000; i++) {
+            underTest.revoke("header.payload.revoked" + i, expiresAt);
+        }
+
+        // then
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(underTest.isRevoked("header.payload.revoked" + i)).isTrue();
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(underTest.isRevoked("header.payload.valid" + i)).isFalse();
+        }
+        // the filter is sized for 1% false positives, so almost every valid token skips the exact set
+        assertThat(underTest.getFalsePositiveCount()).isLessThan(500);
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.zhanlun.springdemoproject.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
+import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleCatalog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class TokenServiceTest {
+    private TokenService underTest;
+
+    @BeforeEach
+    void setUp() {
+        AppRoleCatalog catalog = new AppRoleCatalog(1, List.of(new AppRole(1L, "ROLE_USER", null)));
+        underTest = new TokenService("secret", new RoleClaimCodec(() -> catalog, false),
+                new TokenAuthenticationCache(100, new SimpleMeterRegistry()), new TokenRevocationStore(mock(RevokedTokenRepository.class), 100), new ObjectMapper());
+    }
+
+    @Test
+    void canCreateAccessTokenReadableByStandardVerifier() {
+        // when
+        String token = underTest.createAccessToken("TEST_USER", AuthoritySet.ofNames("ROLE_USER"), "http://localhost/api/login");
+
+        // then
+        DecodedJWT decodedJWT = JWT.require(Algorithm.HMAC256("secret".getBytes())).build().verify(token);
+        assertThat(decodedJWT.getAlgorithm()).isEqualTo("HS256");
+        assertThat(decodedJWT.getType()).isEqualTo("JWT");
+        assertThat(decodedJWT.getSubject()).isEqualTo("TEST_USER");
+        assertThat(decodedJWT.getIssuer()).isEqualTo("http://localhost/api/login");
+        assertThat(decodedJWT.getExpiresAt()).isInTheFuture();
+        assertThat(decodedJWT.getClaim("roles").asList(String.class)).containsExactly("ROLE_USER");
+    }
+
+    @Test
+    void canAuthenticateAccessTokenFromCache() {
+        // given
+        String token = underTest.createAccessToken("TEST_USER", AuthoritySet.ofNames("ROLE_USER"), null);
+
+        // when
+        Authentication first = underTest.authenticate(token);
+        Authentication second = underTest.authenticate(token);
+
+        // then
+        assertThat(first.getName()).isEqualTo("TEST_USER");
+        assertThat(first.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_USER");
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getName()).isEqualTo("TEST_USER");
+        assertThat(second.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_USER");
+    }
+
+    @Test
+    void willRejectRevokedTokenEvenWhenCached() {
+        // given
+        String token = underTest.createAccessToken("TEST_USER", AuthoritySet.ofNames("ROLE_USER"), null);
+        underTest.authenticate(token);
+
+        // when
+        underTest.revoke(underTest.verify(token));
+
+        // then
+        assertThatThrownBy(() -> underTest.authenticate(token))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessage("Token has been revoked");
+        assertThatThrownBy(() -> underTest.verify(token))
+                .isInstanceOf(JWTVerificationException.class);
+    }
+
+    @Test
+    void willRejectRefreshTokenAsAccessToken() {
+        // given
+        String token = underTest.createRefreshToken("TEST_USER", 1L, 0, AuthoritySet.ofNames("ROLE_USER"), null);
+
+        // then
+        assertThatThrownBy(() -> underTest.authenticate(token))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessage("Refresh token cannot be used as an access token");
+        assertThat(underTest.verifyRefreshToken(token).getSubject()).isEqualTo("TEST_USER");
+    }
+
+    @Test
+    void willRejectTokenSignedWithAnotherSecret() {
+        // given
+        String token = JWT.create().withSubject("TEST_USER").sign(Algorithm.HMAC256("other".getBytes()));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.verify(token))
+                .isInstanceOf(JWTVerificationException.class);
+    }
+
+    @Test
+    void canWriteTokenResponse() throws Exception {
+        // given
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // when
+        underTest.writeTokens(response, "ACCESS", "REFRESH");
+
+        // then
+        assertThat(response.getContentType()).isEqualTo("application/json");
+        assertThat(new ObjectMapper().readTree(response.getContentAsString()).get("access_token").asText()).isEqualTo("ACCESS");
+        assertThat(new ObjectMapper().readTree(response.getContentAsString()).get("refresh_token").asText()).isEqualTo("REFRESH");
+    }
+}
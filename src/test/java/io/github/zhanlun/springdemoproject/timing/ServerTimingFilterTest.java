@@ -0,0 +1,67 @@
+package io.github.zhanlun.springdemoproject.timing;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServerTimingFilterTest {
+    private final ServerTimingFilter underTest = new ServerTimingFilter(List.of("/api/users/export"));
+
+    @Test
+    void canAddServerTimingHeader() throws Exception {
+        // given
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // when
+        underTest.doFilter(new MockHttpServletRequest("GET", "/api/users/1"), response, (req, res) -> {
+            ServerTiming.record(ServerTiming.Phase.AUTH, System.nanoTime());
+            ServerTimingSessionListener listener = new ServerTimingSessionListener();
+            listener.jdbcExecuteStatementStart();
+            listener.jdbcExecuteStatementEnd();
+            listener.jdbcExecuteStatementStart();
+            listener.jdbcExecuteStatementEnd();
+            res.getOutputStream().write("{\"id\":1}".getBytes(StandardCharsets.UTF_8));
+            res.flushBuffer();
+        });
+
+        // then
+        assertThat(response.getHeader(ServerTimingFilter.SERVER_TIMING))
+                .matches("auth;dur=\\d+\\.\\d\\d, db;dur=\\d+\\.\\d\\d;desc=\"2 statements\", serialize;dur=\\d+\\.\\d\\d, total;dur=\\d+\\.\\d\\d");
+        assertThat(response.getContentAsString()).isEqualTo("{\"id\":1}");
+        assertThat(ServerTiming.isActive()).isFalse();
+    }
+
+    @Test
+    void willNotBufferStreamingResponse() throws Exception {
+        // given
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // when
+        underTest.doFilter(new MockHttpServletRequest("GET", "/api/users/export"), response, (req, res) -> {
+            res.getOutputStream().write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+            res.flushBuffer();
+
+            // then
+            assertThat(response.isCommitted()).isTrue();
+            assertThat(response.getContentAsString()).isEqualTo("{\"id\":1}\n");
+        });
+
+        // then
+        assertThat(response.getHeader(ServerTimingFilter.SERVER_TIMING)).contains("total;dur=");
+        assertThat(ServerTiming.isActive()).isFalse();
+    }
+
+    @Test
+    void willNotRecordOutsideTimedRequest() {
+        // when
+        ServerTiming.record(ServerTiming.Phase.AUTH, System.nanoTime());
+
+        // then
+        assertThat(ServerTiming.isActive()).isFalse();
+    }
+}
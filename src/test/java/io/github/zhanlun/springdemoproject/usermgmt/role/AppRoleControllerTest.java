@@ -2,6 +2,7 @@ package io.github.zhanlun.springdemoproject.usermgmt.role;
 
 import io.github.zhanlun.springdemoproject.BaseControllerTest;
 import io.github.zhanlun.springdemoproject.util.JsonHelper;
+import io.github.zhanlun.springdemoproject.util.QueryCounter;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +11,8 @@ import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
 import java.util.ArrayList;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 
 class AppRoleControllerTest extends BaseControllerTest {
     @Autowired
@@ -61,6 +64,18 @@ class AppRoleControllerTest extends BaseControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("$.id").exists());
     }
 
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN", "ROLE_USER"})
+    void getRolesSeesAddedRoleWithoutQuerying() throws Exception {
+        this.postOk("/api/roles", JsonHelper.objectToJson(new AppRole(null, "ROLE_TEST", null)));
+
+        QueryCounter.reset();
+        this.getOk("/api/roles")
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].name").value("ROLE_TEST"));
+
+        assertThat(QueryCounter.count()).isZero();
+    }
+
     @Test
     void forbiddenToAddRole() throws Exception {
         AppRole appRole = new AppRole(null, "ROLE_TEST", null);
@@ -9,6 +9,9 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.List;
+import java.util.Optional;
+
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
@@ -29,6 +32,7 @@ class AppRoleServiceTest {
     @Test
     void canGetAllRoles() {
         // when
+        underTest.init();
         underTest.getRoles();
 
         // then
@@ -55,8 +59,9 @@ class AppRoleServiceTest {
     void willThrowWhenAddDuplicatedRoleName() {
         // given
         AppRole appRole = new AppRole(null, "ROLE_TEST", null);
-        given(appRoleRepository.roleNameExists(appRole.getName()))
-                .willReturn(true);
+        given(appRoleRepository.findAll())
+                .willReturn(List.of(new AppRole(1L, "ROLE_TEST", null)));
+        underTest.init();
 
         // when
         assertThatThrownBy(() -> underTest.saveRole(appRole))
@@ -70,11 +75,56 @@ class AppRoleServiceTest {
     void canGetRoleById() {
         // given
         Long appRoleId = 1L;
+        AppRole appRole = new AppRole(appRoleId, "ROLE_TEST", null);
+        given(appRoleRepository.findAll()).willReturn(List.of(appRole));
+        underTest.init();
+
+        // when
+        Optional<AppRole> found = underTest.getRoleById(appRoleId);
+
+        // then
+        assertThat(found).contains(appRole);
+        assertThat(underTest.getRoleById(2L)).isEmpty();
+        verify(appRoleRepository, never()).findById(any());
+    }
+
+    @Test
+    void willLoadCatalogOnceUntilRefreshed() {
+        // given
+        given(appRoleRepository.findAll()).willReturn(List.of(new AppRole(1L, "ROLE_TEST", null)));
+        underTest.init();
+
+        // when
+        AppRoleCatalog first = underTest.getCatalog();
+        underTest.getRoles();
+        underTest.getRoleById(1L);
+        underTest.refreshCatalog();
+        AppRoleCatalog second = underTest.getCatalog();
+
+        // then
+        verify(appRoleRepository, times(2)).findAll();
+        assertThat(second.getVersion()).isGreaterThan(first.getVersion());
+    }
+
+    @Test
+    void willKeepServingCatalogUntilRebuilt() {
+        // given
+        AppRole savedRole = new AppRole(1L, "ROLE_TEST", null);
+        given(appRoleRepository.findAll())
+                .willReturn(List.of())
+                .willReturn(List.of(savedRole));
+        underTest.init();
+        AppRoleCatalog before = underTest.getCatalog();
 
         // when
-        underTest.getRoleById(appRoleId);
+        AppRoleCatalog stillBefore = underTest.getCatalog();
+        underTest.refreshCatalog();
 
         // then
-        verify(appRoleRepository, times(1)).findById(appRoleId);
+        assertThat(stillBefore).isSameAs(before);
+        AppRoleCatalog catalog = underTest.getCatalog();
+        assertThat(catalog.getVersion()).isGreaterThan(before.getVersion());
+        assertThat(catalog.findByName("ROLE_TEST")).contains(savedRole);
+        verify(appRoleRepository, times(2)).findAll();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package io.github.zhanlun.springdemoproject.usermgmt.user;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.zhanlun.springdemoproject.security.PasswordHashingExecutor;
+import io.github.zhanlun.springdemoproject.security.PasswordHashingRejectedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AppUserBulkImportServiceTest {
+    @Mock
+    private AppUserRepository appUserRepository;
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private PasswordEncoder passwordEncoder;
+    @Mock
+    private PasswordHashingExecutor passwordHashingExecutor;
+    private AppUserBulkImportService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new AppUserBulkImportService(appUserRepository, entityManager, transactionManager, new ObjectMapper(),
+                passwordEncoder, passwordHashingExecutor, 100, 50);
+    }
+
+    @Test
+    void willNotHashOnRequestThreadWhenPoolStaysFull() {
+        // given
+        given(passwordHashingExecutor.getPoolSize()).willReturn(2);
+        given(passwordHashingExecutor.submit(any())).willThrow(new PasswordHashingRejectedException("full", 1));
+        String body = "{\"username\":\"bulk_user\",\"password\":\"password\"}";
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.importUsers(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))))
+                .isInstanceOf(PasswordHashingRejectedException.class);
+        verify(passwordHashingExecutor, atLeast(2)).submit(any());
+        verifyNoInteractions(passwordEncoder);
+    }
+}
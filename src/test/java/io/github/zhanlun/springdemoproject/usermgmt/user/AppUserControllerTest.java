@@ -1,17 +1,27 @@
 package io.github.zhanlun.springdemoproject.usermgmt.user;
 
+import com.jayway.jsonpath.JsonPath;
 import io.github.zhanlun.springdemoproject.BaseControllerTest;
+import io.github.zhanlun.springdemoproject.security.AuthoritySet;
+import io.github.zhanlun.springdemoproject.security.SecurityVersionTable;
+import io.github.zhanlun.springdemoproject.security.TokenService;
 import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
 import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleRepository;
 import io.github.zhanlun.springdemoproject.util.JsonHelper;
+import io.github.zhanlun.springdemoproject.util.QueryCounter;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -23,6 +33,12 @@ class AppUserControllerTest extends BaseControllerTest {
     private AppUserRepository appUserRepository;
     @Autowired
     private AppRoleRepository appRoleRepository;
+    @Autowired
+    private AppUserService appUserService;
+    @Autowired
+    private TokenService tokenService;
+    @Autowired
+    private SecurityVersionTable securityVersions;
 
     @AfterEach
     void tearDown() {
@@ -37,11 +53,106 @@ class AppUserControllerTest extends BaseControllerTest {
         AppRole savedAppRole = appRoleRepository.save(appRole);
         AppUser appUser = new AppUser(null, "user_test", "password", "FULL NAME", List.of(savedAppRole));
         appUserRepository.save(appUser);
-        String json = JsonHelper.objectToJson(appUserRepository.findAll());
+        String json = JsonHelper.objectToJson(new AppUserPageDto(appUserRepository.findAll(), null));
 
         this.getOkAndJsonMatch("/api/users", json);
     }
 
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN"})
+    void canGetUsersByCursor() throws Exception {
+        AppUser first = appUserRepository.save(new AppUser(null, "user_1", "password", "ONE", new ArrayList<>()));
+        AppUser second = appUserRepository.save(new AppUser(null, "user_2", "password", "TWO", new ArrayList<>()));
+        AppUser third = appUserRepository.save(new AppUser(null, "user_3", "password", "THREE", new ArrayList<>()));
+
+        String body = this.getOk("/api/users?limit=2")
+                .andExpect(MockMvcResultMatchers.jsonPath("$.items.length()").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.items[0].id").value(first.getId()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.items[1].id").value(second.getId()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.next").exists())
+                .andReturn().getResponse().getContentAsString();
+        String next = JsonPath.read(body, "$.next");
+
+        this.getOk("/api/users?limit=2&cursor=" + next)
+                .andExpect(MockMvcResultMatchers.jsonPath("$.items.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.items[0].id").value(third.getId()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.next").doesNotExist());
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN"})
+    void canGetUsersDescending() throws Exception {
+        appUserRepository.save(new AppUser(null, "user_1", "password", "ONE", new ArrayList<>()));
+        AppUser second = appUserRepository.save(new AppUser(null, "user_2", "password", "TWO", new ArrayList<>()));
+
+        this.getOk("/api/users?limit=1&sort=-id")
+                .andExpect(MockMvcResultMatchers.jsonPath("$.items[0].id").value(second.getId()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.next").exists());
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN"})
+    void badRequestGetUsersWithInvalidCursor() throws Exception {
+        this.getBadRequest("/api/users?cursor=not-a-cursor");
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN"})
+    void canExportUsers() throws Exception {
+        AppUser first = appUserRepository.save(new AppUser(null, "user_1", "password", "ONE", new ArrayList<>()));
+        AppUser second = appUserRepository.save(new AppUser(null, "user_2", "password", "TWO", new ArrayList<>()));
+
+        String body = this.get("/api/users/export")
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat((Integer) JsonPath.read(lines[0], "$.id")).isEqualTo(first.getId().intValue());
+        assertThat((Integer) JsonPath.read(lines[1], "$.id")).isEqualTo(second.getId().intValue());
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN"})
+    void exportUsersAvoidsQueryPerUser() throws Exception {
+        AppRole firstRole = appRoleRepository.save(new AppRole(null, "ROLE_ONE", new ArrayList<>()));
+        AppRole secondRole = appRoleRepository.save(new AppRole(null, "ROLE_TWO", new ArrayList<>()));
+        for (int i = 0; i < 5; i++) {
+            appUserRepository.save(new AppUser(null, "user_" + i, "password", "FULL NAME", List.of(firstRole, secondRole)));
+        }
+
+        QueryCounter.reset();
+        String body = this.get("/api/users/export")
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(5);
+        assertThat((List<?>) JsonPath.read(lines[4], "$.roles")).hasSize(2);
+        assertThat(QueryCounter.count()).isEqualTo(1);
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN"})
+    void canResumeExportUsers() throws Exception {
+        AppUser first = appUserRepository.save(new AppUser(null, "user_1", "password", "ONE", new ArrayList<>()));
+        AppUser second = appUserRepository.save(new AppUser(null, "user_2", "password", "TWO", new ArrayList<>()));
+
+        String body = this.get("/api/users/export?after=" + first.getId())
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(1);
+        assertThat((Integer) JsonPath.read(lines[0], "$.id")).isEqualTo(second.getId().intValue());
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_USER"})
+    void forbiddenToExportUsers() throws Exception {
+        this.getForbidden("/api/users/export");
+    }
+
     @Test
     @WithMockUser(authorities = {"ROLE_USER"})
     void forbiddenToGetUsers() throws Exception {
@@ -108,6 +219,52 @@ class AppUserControllerTest extends BaseControllerTest {
         this.getOkAndJsonMatch(url, json);
     }
 
+    @Test
+    @WithMockUser(username = "user_test")
+    void getUserRolesQueriesJoinTableOnce() throws Exception {
+        AppRole savedAppRole = appRoleRepository.save(new AppRole(null, "ROLE_TEST", new ArrayList<>()));
+        AppUser savedAppUser = appUserRepository.save(new AppUser(null, "user_test", "password", "FULL NAME", List.of(savedAppRole)));
+
+        QueryCounter.reset();
+        this.getOk("/api/users/" + savedAppUser.getId() + "/roles");
+
+        assertThat(QueryCounter.count()).isEqualTo(1);
+    }
+
+    @Test
+    @WithMockUser(username = "user_test")
+    void notFoundGetUserRoles() throws Exception {
+        this.getNotFound("/api/users/1234/roles");
+    }
+
+    @Test
+    @WithMockUser(username = "user_test")
+    void getUserLoadsRolesInSameQuery() throws Exception {
+        AppRole savedAppRole = appRoleRepository.save(new AppRole(null, "ROLE_TEST", new ArrayList<>()));
+        AppUser savedAppUser = appUserRepository.save(new AppUser(null, "user_test", "password", "FULL NAME", List.of(savedAppRole)));
+
+        QueryCounter.reset();
+        this.getOk("/api/users/" + savedAppUser.getId())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.roles[0].name").value("ROLE_TEST"));
+
+        assertThat(QueryCounter.count()).isEqualTo(1);
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN"})
+    void getUsersPageAvoidsQueryPerUser() throws Exception {
+        AppRole savedAppRole = appRoleRepository.save(new AppRole(null, "ROLE_TEST", new ArrayList<>()));
+        for (int i = 0; i < 5; i++) {
+            appUserRepository.save(new AppUser(null, "user_" + i, "password", "FULL NAME", List.of(savedAppRole)));
+        }
+
+        QueryCounter.reset();
+        this.getOk("/api/users?limit=5")
+                .andExpect(MockMvcResultMatchers.jsonPath("$.items[4].roles[0].name").value("ROLE_TEST"));
+
+        assertThat(QueryCounter.count()).isEqualTo(2);
+    }
+
     @Test
     @WithMockUser(authorities = {"ROLE_ADMIN"})
     void canAddUser() throws Exception {
@@ -127,6 +284,54 @@ class AppUserControllerTest extends BaseControllerTest {
         this.postForbidden("/api/users/", json);
     }
 
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN"})
+    void canBulkImportUsersFromJsonArray() throws Exception {
+        appUserRepository.save(new AppUser(null, "user_taken", "password", "TAKEN", new ArrayList<>()));
+        String json = JsonHelper.objectToJson(List.of(
+                new AppUser(null, "user_1", "password", "ONE", null),
+                new AppUser(null, "user_taken", "password", "TAKEN AGAIN", null),
+                new AppUser(null, "user_2", "password", "TWO", null),
+                new AppUser(null, "user_1", "password", "REPEATED", null)
+        ));
+
+        this.post("/api/users:bulk", json)
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.created").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.failed").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[0].id").exists())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[1].error").value("Username user_taken is taken"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[2].id").exists())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[3].error").exists());
+
+        Optional<AppUser> imported = appUserRepository.findByUsername("user_2");
+        assertThat(imported).isNotEmpty();
+        assertThat(imported.get().getPassword()).isNotEqualTo("password");
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN"})
+    void canBulkImportUsersFromNdjson() throws Exception {
+        String ndjson = "{\"username\":\"user_1\",\"password\":\"password\"}\n" +
+                "{\"username\":\"user_2\"}\n" +
+                "{\"username\":\"user_3\",\"password\":\"password\"}\n";
+
+        this.mockMvc.perform(MockMvcRequestBuilders.post("/api/users:bulk")
+                        .content(ndjson)
+                        .contentType("application/x-ndjson"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.created").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[1].error").value("Password is required"));
+
+        assertThat(appUserRepository.findByUsername("user_3")).isNotEmpty();
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_USER"})
+    void forbiddenToBulkImportUsers() throws Exception {
+        this.postForbidden("/api/users:bulk", "[]");
+    }
+
     @Test
     @WithMockUser(authorities = {"ROLE_ADMIN"})
     void canAddRoleToUser() throws Exception {
@@ -182,6 +387,49 @@ class AppUserControllerTest extends BaseControllerTest {
         assertThat(appUserOptional.get().getRoles()).isEmpty();
     }
 
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN"})
+    void canAddRoleToUsers() throws Exception {
+        AppRole savedAppRole = appRoleRepository.save(new AppRole(null, "ROLE_TEST", new ArrayList<>()));
+        AppUser first = appUserRepository.save(new AppUser(null, "team_a_1", "password", "ONE", new ArrayList<>()));
+        AppUser second = appUserRepository.save(new AppUser(null, "team_a_2", "password", "TWO", new ArrayList<>()));
+        AppUser other = appUserRepository.save(new AppUser(null, "team_b_1", "password", "OTHER", new ArrayList<>()));
+        String json = JsonHelper.objectToJson(new RoleMembershipDto(null, "team_a"));
+
+        this.post("/api/users/roles/" + savedAppRole.getId(), json)
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.updated").value(2));
+
+        assertThat(appUserRepository.findById(first.getId()).get().getRoles()).hasSize(1);
+        assertThat(appUserRepository.findById(second.getId()).get().getRoles()).hasSize(1);
+        assertThat(appUserRepository.findById(other.getId()).get().getRoles()).isEmpty();
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_ADMIN"})
+    void canRemoveRoleFromUsers() throws Exception {
+        AppRole savedAppRole = appRoleRepository.save(new AppRole(null, "ROLE_TEST", new ArrayList<>()));
+        AppUser first = appUserRepository.save(new AppUser(null, "user_1", "password", "ONE", List.of(savedAppRole)));
+        AppUser second = appUserRepository.save(new AppUser(null, "user_2", "password", "TWO", List.of(savedAppRole)));
+        String json = JsonHelper.objectToJson(new RoleMembershipDto(List.of(first.getId()), null));
+
+        this.mockMvc.perform(MockMvcRequestBuilders.delete("/api/users/roles/" + savedAppRole.getId())
+                        .content(json)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.updated").value(1));
+
+        assertThat(appUserRepository.findById(first.getId()).get().getRoles()).isEmpty();
+        assertThat(appUserRepository.findById(second.getId()).get().getRoles()).hasSize(1);
+    }
+
+    @Test
+    @WithMockUser(authorities = {"ROLE_USER"})
+    void forbiddenAddRoleToUsers() throws Exception {
+        String json = JsonHelper.objectToJson(new RoleMembershipDto(List.of(1L), null));
+        this.post("/api/users/roles/1", json).andExpect(status().isForbidden());
+    }
+
     @Test
     @WithMockUser(authorities = {"ROLE_USER"})
     void forbiddenRemoveRoleFromUser() throws Exception {
@@ -205,7 +453,12 @@ class AppUserControllerTest extends BaseControllerTest {
         String json = JsonHelper.objectToJson(appUserProfileDto);
 
         String url = "/api/users/" + savedAppUser.getId();
+        QueryCounter.reset();
         this.patchOk(url, json);
+
+        // username for the ownership check, the user itself, and the update
+        assertThat(QueryCounter.count()).isEqualTo(3);
+        assertThat(appUserRepository.findById(savedAppUser.getId()).get().getFullname()).isEqualTo("UPDATED NAME");
     }
 
     @Test
@@ -235,4 +488,152 @@ class AppUserControllerTest extends BaseControllerTest {
     @Test
     void refreshToken() {
     }
-}
\ No newline at end of file
+
+    @Test
+    void canRefreshWithoutDatabaseUntilRolesChange() throws Exception {
+        AppRole userRole = appRoleRepository.save(new AppRole(null, "ROLE_USER", new ArrayList<>()));
+        AppRole adminRole = appRoleRepository.save(new AppRole(null, "ROLE_ADMIN", new ArrayList<>()));
+        AppUser savedAppUser = appUserRepository.save(new AppUser(null, "user_test", "password", "FULL NAME", List.of(userRole)));
+        String refreshToken = tokenService.createRefreshToken(savedAppUser.getUsername(), savedAppUser.getId(),
+                securityVersions.current(savedAppUser.getId()), AuthoritySet.ofNames("ROLE_USER"), null);
+
+        QueryCounter.reset();
+        String body = refresh(refreshToken);
+        assertThat(QueryCounter.count()).isZero();
+        assertThat(accessTokenRoles(body)).containsExactly("ROLE_USER");
+        assertThat(JsonPath.<String>read(body, "$.refresh_token")).isEqualTo(refreshToken);
+
+        appUserService.addRoleToUser(savedAppUser.getId(), adminRole.getId());
+
+        QueryCounter.reset();
+        body = refresh(refreshToken);
+        assertThat(QueryCounter.count()).isPositive();
+        assertThat(accessTokenRoles(body)).containsExactlyInAnyOrder("ROLE_USER", "ROLE_ADMIN");
+        String renewedRefreshToken = JsonPath.read(body, "$.refresh_token");
+        assertThat(renewedRefreshToken).isNotEqualTo(refreshToken);
+
+        QueryCounter.reset();
+        refresh(renewedRefreshToken);
+        assertThat(QueryCounter.count()).isZero();
+    }
+
+    @Test
+    @WithMockUser(username = "user_test")
+    void canRevokeRefreshToken() throws Exception {
+        AppUser savedAppUser = appUserRepository.save(new AppUser(null, "user_test", "password", "FULL NAME", new ArrayList<>()));
+        String refreshToken = tokenService.createRefreshToken(savedAppUser.getUsername(), savedAppUser.getId(),
+                securityVersions.current(savedAppUser.getId()), AuthoritySet.ofNames(), null);
+        refresh(refreshToken);
+
+        this.post("/api/revokeToken", JsonHelper.objectToJson(Map.of("token", refreshToken)))
+                .andExpect(status().isNoContent());
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/api/refreshToken")
+                        .header("Authorization", "Bearer " + refreshToken))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void forbiddenToUseRefreshTokenAsBearer() throws Exception {
+        AppUser savedAppUser = appUserRepository.save(new AppUser(null, "user_test", "password", "FULL NAME", new ArrayList<>()));
+        String refreshToken = tokenService.createRefreshToken(savedAppUser.getUsername(), savedAppUser.getId(),
+                securityVersions.current(savedAppUser.getId()), AuthoritySet.ofNames("ROLE_ADMIN"), null);
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/api/users/" + savedAppUser.getId())
+                        .header("Authorization", "Bearer " + refreshToken))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void forbiddenToRefreshWithAccessToken() throws Exception {
+        String accessToken = tokenService.createAccessToken("user_test", AuthoritySet.ofNames("ROLE_USER"), null);
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/api/refreshToken")
+                        .header("Authorization", "Bearer " + accessToken))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(username = "other_user")
+    void badRequestRevokeTokenOfAnotherUser() throws Exception {
+        String refreshToken = tokenService.createRefreshToken("user_test", 1L, 0, AuthoritySet.ofNames(), null);
+
+        this.post("/api/revokeToken", JsonHelper.objectToJson(Map.of("token", refreshToken)))
+                .andExpect(status().isBadRequest());
+    }
+
+    private String refresh(String refreshToken) throws Exception {
+        return this.mockMvc.perform(MockMvcRequestBuilders.get("/api/refreshToken")
+                        .header("Authorization", "Bearer " + refreshToken))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    private List<String> accessTokenRoles(String body) {
+        String accessToken = JsonPath.read(body, "$.access_token");
+        return tokenService.verify(accessToken).getClaim("roles").asList(String.class);
+    }
+
+    @Test
+    void tooManyRequestsForRepeatedLoginsOfOneUsername() throws Exception {
+        String json = "{\"username\":\"rate_limited_user\",\"password\":\"wrong\"}";
+
+        for (int i = 0; i < 5; i++) {
+            this.mockMvc.perform(MockMvcRequestBuilders.post("/api/login")
+                            .with(request -> {
+                                request.setRemoteAddr("10.0.0.1");
+                                return request;
+                            })
+                            .content(json)
+                            .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isUnauthorized());
+        }
+        this.mockMvc.perform(MockMvcRequestBuilders.post("/api/login")
+                        .with(request -> {
+                            request.setRemoteAddr("10.0.0.1");
+                            return request;
+                        })
+                        .content(json)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(MockMvcResultMatchers.header().exists("Retry-After"));
+    }
+
+    @Test
+    void tooManyRequestsForRepeatedLoginsFromOneIp() throws Exception {
+        // malformed bodies are rejected before hashing, so only the IP bucket is spent
+        MvcResult limited = exhaustIpLimit(MockMvcRequestBuilders.post("/api/login"), "10.0.0.2", 40);
+
+        assertThat(limited.getResponse().getStatus()).isEqualTo(429);
+        assertThat(limited.getResponse().getHeader("Retry-After")).isNotBlank();
+    }
+
+    @Test
+    void tooManyRequestsForRepeatedRefreshesFromOneIp() throws Exception {
+        MvcResult limited = exhaustIpLimit(MockMvcRequestBuilders.get("/api/refreshToken")
+                .header("Authorization", "Bearer not-a-token"), "10.0.0.3", 100);
+
+        assertThat(limited.getResponse().getStatus()).isEqualTo(429);
+        assertThat(limited.getResponse().getHeader("Retry-After")).isNotBlank();
+    }
+
+    /**
+     * Repeat the request from one address until it is rate limited, or give up after maxAttempts.
+     */
+    private MvcResult exhaustIpLimit(MockHttpServletRequestBuilder builder, String remoteAddr, int maxAttempts) throws Exception {
+        builder.with(request -> {
+                    request.setRemoteAddr(remoteAddr);
+                    return request;
+                })
+                .content("not json")
+                .contentType(MediaType.APPLICATION_JSON);
+        MvcResult result = null;
+        for (int i = 0; i < maxAttempts; i++) {
+            result = this.mockMvc.perform(builder).andReturn();
+            if (result.getResponse().getStatus() == 429) {
+                break;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.zhanlun.springdemoproject.usermgmt.user;
+
+import io.github.zhanlun.springdemoproject.security.AuthoritySet;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AppUserDetailsCacheTest {
+    private final AppUserDetailsCache underTest = new AppUserDetailsCache(100, Duration.ofMinutes(1));
+
+    @Test
+    void canEvictManyIdsInOneScan() {
+        // given
+        underTest.get("user_1", username -> details(1L, username));
+        underTest.get("user_2", username -> details(2L, username));
+        underTest.get("user_3", username -> details(3L, username));
+
+        // when
+        underTest.evictByIds(List.of(1L, 3L));
+
+        // then
+        assertThat(underTest.getSize()).isEqualTo(1);
+        assertThat(underTest.get("user_2", username -> details(99L, username)).getId()).isEqualTo(2L);
+    }
+
+    @Test
+    void willDropLoadThatWasInFlightDuringEviction() {
+        // given
+        underTest.get("user_1", username -> {
+            // the write and its eviction land while this stale load is running
+            underTest.evictById(1L);
+            return details(1L, username);
+        });
+
+        // when
+        AppUserDetails reloaded = underTest.get("user_1", username -> details(42L, username));
+
+        // then
+        assertThat(reloaded.getId()).isEqualTo(42L);
+    }
+
+    @Test
+    void willKeepLoadThatUnrelatedEvictionsRacedWith() {
+        // given
+        underTest.get("user_1", username -> {
+            // other users are written while this load is running
+            underTest.evictById(2L);
+            underTest.evictByUsernamePrefix("bulk_");
+            return details(1L, username);
+        });
+
+        // when
+        AppUserDetails cached = underTest.get("user_1", username -> details(42L, username));
+
+        // then
+        assertThat(cached.getId()).isEqualTo(1L);
+    }
+
+    @Test
+    void willDropLoadThatWasInFlightDuringPrefixEviction() {
+        // given
+        underTest.get("bulk_1", username -> {
+            underTest.evictByUsernamePrefix("bulk_");
+            return details(1L, username);
+        });
+
+        // when
+        AppUserDetails reloaded = underTest.get("bulk_1", username -> details(42L, username));
+
+        // then
+        assertThat(reloaded.getId()).isEqualTo(42L);
+    }
+
+    private static AppUserDetails details(Long id, String username) {
+        return new AppUserDetails(id, username, "password", AuthoritySet.ofNames("ROLE_USER"), 0);
+    }
+}
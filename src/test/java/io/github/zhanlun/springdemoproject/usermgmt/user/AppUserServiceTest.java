@@ -1,8 +1,12 @@
 package io.github.zhanlun.springdemoproject.usermgmt.user;
 
+import io.github.zhanlun.springdemoproject.security.AuthoritySet;
+import io.github.zhanlun.springdemoproject.security.PasswordHashingExecutor;
+import io.github.zhanlun.springdemoproject.security.SecurityVersionTable;
 import io.github.zhanlun.springdemoproject.usermgmt.role.AppRole;
 import io.github.zhanlun.springdemoproject.usermgmt.role.AppRoleRepository;
 import io.github.zhanlun.springdemoproject.util.BadRequestException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,10 +20,14 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
 
@@ -32,11 +40,16 @@ class AppUserServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    private SecurityVersionTable securityVersions;
     private AppUserService underTest;
 
     @BeforeEach
     void setUp() {
-        underTest = new AppUserService(appUserRepository, appRoleRepository, passwordEncoder);
+        PasswordHashingExecutor passwordHashingExecutor = new PasswordHashingExecutor(1, 1, 1, new SimpleMeterRegistry());
+        AppUserDetailsCache userDetailsCache = new AppUserDetailsCache(100, Duration.ofMinutes(1));
+        securityVersions = new SecurityVersionTable(100);
+        underTest = new AppUserService(appUserRepository, appRoleRepository, passwordEncoder, passwordHashingExecutor,
+                userDetailsCache, securityVersions);
     }
 
     @Test
@@ -55,13 +68,73 @@ class AppUserServiceTest {
 
         // when
         UserDetails userDetails = underTest.loadUserByUsername(username);
-        Collection<GrantedAuthority> userDetailsAuthorities = (Collection<GrantedAuthority>) userDetails.getAuthorities();
+        Collection<? extends GrantedAuthority> userDetailsAuthorities = userDetails.getAuthorities();
 
         // then
         assertThat(userDetails.getUsername()).isEqualTo(appUser.getUsername());
         assertThat(userDetails.getPassword()).isEqualTo(appUser.getPassword());
-        assertThat(userDetailsAuthorities).hasSameElementsAs(authorities);
+        assertThat(userDetailsAuthorities).extracting(GrantedAuthority::getAuthority)
+                .hasSameElementsAs(authorities.stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList()));
         assertThat(userDetailsAuthorities).hasSameSizeAs(authorities);
+        assertThat(authorities).allMatch(userDetailsAuthorities::contains);
+    }
+
+    @Test
+    void willShareInternedAuthoritiesBetweenUsers() {
+        // given
+        AppRole role = new AppRole(1L, "ROLE_1", null);
+        given(appUserRepository.findByUsername("USER_A"))
+                .willReturn(Optional.of(new AppUser(1L, "USER_A", "PASSWORD", "A", List.of(role))));
+        given(appUserRepository.findByUsername("USER_B"))
+                .willReturn(Optional.of(new AppUser(2L, "USER_B", "PASSWORD", "B", List.of(role))));
+
+        // when
+        Collection<? extends GrantedAuthority> first = underTest.loadUserByUsername("USER_A").getAuthorities();
+        Collection<? extends GrantedAuthority> second = underTest.loadUserByUsername("USER_B").getAuthorities();
+
+        // then
+        assertThat(first).isInstanceOf(AuthoritySet.class).isEqualTo(second);
+        assertThat(first.iterator().next()).isSameAs(second.iterator().next());
+        assertThat(AuthoritySet.hasAuthority(first, "ROLE_1")).isTrue();
+        assertThat(AuthoritySet.hasAuthority(first, "ROLE_2")).isFalse();
+    }
+
+    @Test
+    void canLoadUserByUsernameFromCache() {
+        // given
+        final String username = "TEST_USER";
+        AppUser appUser = new AppUser(1L, username, "TEST_PASSWORD", "TEST FULL NAME", new ArrayList<>());
+        given(appUserRepository.findByUsername(username)).willReturn(Optional.of(appUser));
+
+        // when
+        UserDetails first = underTest.loadUserByUsername(username);
+        UserDetails second = underTest.loadUserByUsername(username);
+
+        // then
+        assertThat(second).isSameAs(first);
+        verify(appUserRepository, times(1)).findByUsername(username);
+    }
+
+    @Test
+    void willReloadUserDetailsAfterRoleAdded() {
+        // given
+        final String username = "TEST_USER";
+        AppRole appRole = new AppRole(1L, "ROLE_TEST", new ArrayList<>());
+        AppUser before = new AppUser(1L, username, "TEST_PASSWORD", "TEST FULL NAME", new ArrayList<>());
+        AppUser after = new AppUser(1L, username, "TEST_PASSWORD", "TEST FULL NAME", List.of(appRole));
+        given(appUserRepository.findByUsername(username))
+                .willReturn(Optional.of(before))
+                .willReturn(Optional.of(after));
+        given(appUserRepository.grantRole(before.getId(), appRole.getId())).willReturn(1);
+        underTest.loadUserByUsername(username);
+
+        // when
+        underTest.addRoleToUser(before.getId(), appRole.getId());
+        UserDetails userDetails = underTest.loadUserByUsername(username);
+
+        // then
+        verify(appUserRepository, times(2)).findByUsername(username);
+        assertThat(userDetails.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_TEST");
     }
 
     @Test
@@ -76,6 +149,24 @@ class AppUserServiceTest {
                 .hasMessageContaining("User not found in db");
     }
 
+    @Test
+    void canUpdatePasswordAfterRehash() {
+        // given
+        final String username = "TEST_USER";
+        AppUser appUser = new AppUser(1L, username, "OLD_HASH", "TEST FULL NAME", new ArrayList<>());
+        given(appUserRepository.findByUsername(username)).willReturn(Optional.of(appUser));
+        UserDetails userDetails = new org.springframework.security.core.userdetails.User(username, "OLD_HASH", new ArrayList<>());
+
+        // when
+        UserDetails updated = underTest.updatePassword(userDetails, "NEW_HASH");
+
+        // then
+        ArgumentCaptor<AppUser> appUserArgumentCaptor = ArgumentCaptor.forClass(AppUser.class);
+        Mockito.verify(appUserRepository).save(appUserArgumentCaptor.capture());
+        assertThat(appUserArgumentCaptor.getValue().getPassword()).isEqualTo("NEW_HASH");
+        assertThat(updated.getPassword()).isEqualTo("NEW_HASH");
+    }
+
     @Test
     void canAddUser() {
         // given
@@ -95,37 +186,79 @@ class AppUserServiceTest {
     @Test
     void canAddRoleToUser() {
         // given
-        AppUser appUser = new AppUser(1L, "TEST_USER", "TEST_PASSWORD", "TEST FULL NAME", new ArrayList<>());
-        AppRole appRole = new AppRole(1L, "ROLE_TEST", new ArrayList<>());
+        final Long userId = 1L;
+        final Long roleId = 2L;
+        given(appUserRepository.grantRole(userId, roleId)).willReturn(1);
 
-        given(appUserRepository.findById(appUser.getId())).willReturn(Optional.of(appUser));
-        given(appRoleRepository.findById(appRole.getId())).willReturn(Optional.of(appRole));
-        List<AppRole> roles = new ArrayList<>(appUser.getRoles());
-        roles.add(appRole); // after added role
+        // when
+        underTest.addRoleToUser(userId, roleId);
+
+        // then
+        verify(appUserRepository).grantRole(userId, roleId);
+        verify(appUserRepository, never()).findById(any());
+        verify(appUserRepository, never()).save(any());
+        verifyNoInteractions(appRoleRepository);
+    }
+
+    @Test
+    void willChangeSecurityVersionWhenRolesChange() {
+        // given
+        final Long userId = 1L;
+        final Long roleId = 2L;
+        long initialVersion = securityVersions.current(userId);
+        given(appUserRepository.grantRole(userId, roleId)).willReturn(1);
+        given(appUserRepository.revokeRole(userId, roleId)).willReturn(1);
 
         // when
-        underTest.addRoleToUser(appUser.getId(), appRole.getId());
+        underTest.addRoleToUser(userId, roleId);
+        long versionAfterGrant = securityVersions.current(userId);
+        underTest.removeRoleFromUser(userId, roleId);
 
         // then
-        ArgumentCaptor<AppUser> appUserArgumentCaptor = ArgumentCaptor.forClass(AppUser.class);
-        Mockito.verify(appUserRepository).save(appUserArgumentCaptor.capture());
-        AppUser capturedAppUser = appUserArgumentCaptor.getValue();
-        assertThat(capturedAppUser).isEqualTo(appUser);
-        assertThat(capturedAppUser.getRoles()).hasSameElementsAs(roles);
-        assertThat(capturedAppUser.getRoles()).hasSameSizeAs(roles);
+        assertThat(securityVersions.isCurrent(userId, initialVersion)).isFalse();
+        assertThat(securityVersions.isCurrent(userId, versionAfterGrant)).isFalse();
+        assertThat(securityVersions.current(3L)).isEqualTo(initialVersion);
     }
 
     @Test
-    void willThrowIfUserNotFoundWhenAddRoleToUser() {
+    void canLoadUserDetailsWithSecurityVersion() {
         // given
         AppUser appUser = new AppUser(1L, "TEST_USER", "TEST_PASSWORD", "TEST FULL NAME", new ArrayList<>());
-        AppRole appRole = new AppRole(1L, "ROLE_TEST", new ArrayList<>());
+        given(appUserRepository.findByUsername("TEST_USER")).willReturn(Optional.of(appUser));
+
+        // when
+        AppUserDetails userDetails = (AppUserDetails) underTest.loadUserByUsername("TEST_USER");
 
-        given(appUserRepository.findById(appUser.getId())).willReturn(Optional.empty());
-        given(appRoleRepository.findById(appRole.getId())).willReturn(Optional.of(appRole));
+        // then
+        assertThat(securityVersions.isCurrent(1L, userDetails.getSecurityVersion())).isTrue();
+    }
+
+    @Test
+    void canAddRoleToUserWhenAlreadyGranted() {
+        // given
+        final Long userId = 1L;
+        final Long roleId = 2L;
+        given(appUserRepository.grantRole(userId, roleId)).willReturn(0);
+        given(appUserRepository.existsById(userId)).willReturn(true);
+        given(appRoleRepository.existsById(roleId)).willReturn(true);
+
+        // when
+        underTest.addRoleToUser(userId, roleId);
+
+        // then
+        verify(appUserRepository, never()).save(any());
+    }
+
+    @Test
+    void willThrowIfUserNotFoundWhenAddRoleToUser() {
+        // given
+        final Long userId = 1L;
+        final Long roleId = 2L;
+        given(appUserRepository.grantRole(userId, roleId)).willReturn(0);
+        given(appUserRepository.existsById(userId)).willReturn(false);
 
         // when
-        assertThatThrownBy(() -> underTest.addRoleToUser(appUser.getId(), appRole.getId()))
+        assertThatThrownBy(() -> underTest.addRoleToUser(userId, roleId))
                 .isInstanceOf(BadRequestException.class)
                 .hasMessageContaining("User not found in db");
 
@@ -136,14 +269,14 @@ class AppUserServiceTest {
     @Test
     void willThrowIfRoleNotFoundWhenAddRoleToUser() {
         // given
-        AppUser appUser = new AppUser(1L, "TEST_USER", "TEST_PASSWORD", "TEST FULL NAME", new ArrayList<>());
-        AppRole appRole = new AppRole(1L, "ROLE_TEST", new ArrayList<>());
-
-        given(appUserRepository.findById(appUser.getId())).willReturn(Optional.of(appUser));
-        given(appRoleRepository.findById(appRole.getId())).willReturn(Optional.empty());
+        final Long userId = 1L;
+        final Long roleId = 2L;
+        given(appUserRepository.grantRole(userId, roleId)).willReturn(0);
+        given(appUserRepository.existsById(userId)).willReturn(true);
+        given(appRoleRepository.existsById(roleId)).willReturn(false);
 
         // when
-        assertThatThrownBy(() -> underTest.addRoleToUser(appUser.getId(), appRole.getId()))
+        assertThatThrownBy(() -> underTest.addRoleToUser(userId, roleId))
                 .isInstanceOf(BadRequestException.class)
                 .hasMessageContaining("Role not found in db");
 
@@ -151,6 +284,47 @@ class AppUserServiceTest {
         verify(appRoleRepository, never()).save(any());
     }
 
+    @Test
+    void canAddRoleToUsersById() {
+        // given
+        final Long roleId = 2L;
+        List<Long> userIds = List.of(1L, 3L);
+        given(appRoleRepository.existsById(roleId)).willReturn(true);
+        given(appUserRepository.grantRoleToUsers(roleId, userIds)).willReturn(2);
+
+        // when
+        int updated = underTest.addRoleToUsers(roleId, new RoleMembershipDto(userIds, null));
+
+        // then
+        assertThat(updated).isEqualTo(2);
+    }
+
+    @Test
+    void canRemoveRoleFromUsersByUsernamePrefix() {
+        // given
+        final Long roleId = 2L;
+        given(appRoleRepository.existsById(roleId)).willReturn(true);
+        given(appUserRepository.revokeRoleFromUsernamesLike(roleId, "team\\_a%")).willReturn(3);
+
+        // when
+        int updated = underTest.removeRoleFromUsers(roleId, new RoleMembershipDto(null, "team_a"));
+
+        // then
+        assertThat(updated).isEqualTo(3);
+    }
+
+    @Test
+    void willThrowIfSelectionIsAmbiguousWhenAddRoleToUsers() {
+        // given
+        final Long roleId = 2L;
+        given(appRoleRepository.existsById(roleId)).willReturn(true);
+
+        // then
+        assertThatThrownBy(() -> underTest.addRoleToUsers(roleId, new RoleMembershipDto(List.of(1L), "team")))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("Exactly one of userIds or usernamePrefix is required");
+    }
+
     @Test
     void canGetUser() {
         // given
@@ -163,6 +337,66 @@ class AppUserServiceTest {
         verify(appUserRepository, times(1)).findById(appUserId);
     }
 
+    @Test
+    void willShareConcurrentLookupsOfSameUser() throws Exception {
+        // given
+        AppUser appUser = new AppUser(1L, "TEST_USER", "TEST_PASSWORD", "TEST FULL NAME", new ArrayList<>());
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch releaseQuery = new CountDownLatch(1);
+        given(appUserRepository.findById(1L)).willAnswer(invocation -> {
+            queryStarted.countDown();
+            releaseQuery.await(5, TimeUnit.SECONDS);
+            return Optional.of(appUser);
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // when
+        Future<Optional<AppUser>> first = executor.submit(() -> underTest.getUser(1L));
+        queryStarted.await(5, TimeUnit.SECONDS);
+        Future<Optional<AppUser>> second = executor.submit(() -> underTest.getUser(1L));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (underTest.getSharedLookupCount() == 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        releaseQuery.countDown();
+
+        // then
+        assertThat(first.get(5, TimeUnit.SECONDS)).containsSame(appUser);
+        assertThat(second.get(5, TimeUnit.SECONDS)).containsSame(appUser);
+        assertThat(underTest.getSharedLookupCount()).isEqualTo(1);
+        verify(appUserRepository, times(1)).findById(1L);
+        executor.shutdown();
+    }
+
+    @Test
+    void canGetUserRoles() {
+        // given
+        Long appUserId = 1L;
+        List<AppRole> roles = List.of(new AppRole(1L, "ROLE_TEST", null));
+        given(appRoleRepository.findAllByUserId(appUserId)).willReturn(roles);
+
+        // when
+        Optional<List<AppRole>> userRoles = underTest.getUserRoles(appUserId);
+
+        // then
+        assertThat(userRoles).contains(roles);
+        verify(appUserRepository, never()).findById(any());
+    }
+
+    @Test
+    void willReturnEmptyWhenGetRolesOfMissingUser() {
+        // given
+        Long appUserId = 1L;
+        given(appRoleRepository.findAllByUserId(appUserId)).willReturn(List.of());
+        given(appUserRepository.existsById(appUserId)).willReturn(false);
+
+        // when
+        Optional<List<AppRole>> userRoles = underTest.getUserRoles(appUserId);
+
+        // then
+        assertThat(userRoles).isEmpty();
+    }
+
     @Test
     void getUserByUsername() {
         // given
@@ -184,6 +418,40 @@ class AppUserServiceTest {
         verify(appUserRepository, times(1)).findAll();
     }
 
+    @Test
+    void canGetUsersPageWithNextCursor() {
+        // given
+        List<AppUser> users = Arrays.asList(
+                new AppUser(1L, "USER_1", "TEST_PASSWORD", "ONE", new ArrayList<>()),
+                new AppUser(2L, "USER_2", "TEST_PASSWORD", "TWO", new ArrayList<>()),
+                new AppUser(3L, "USER_3", "TEST_PASSWORD", "THREE", new ArrayList<>())
+        );
+        given(appUserRepository.findByIdGreaterThan(eq(Long.MIN_VALUE), any())).willReturn(users);
+        given(appUserRepository.findByIdGreaterThan(eq(2L), any())).willReturn(users.subList(2, 3));
+
+        // when
+        AppUserPageDto firstPage = underTest.getUsersPage(null, 2, null);
+        AppUserPageDto secondPage = underTest.getUsersPage(firstPage.next, 2, null);
+
+        // then
+        assertThat(firstPage.items).extracting(AppUser::getId).containsExactly(1L, 2L);
+        assertThat(firstPage.next).isNotNull();
+        assertThat(secondPage.items).extracting(AppUser::getId).containsExactly(3L);
+        assertThat(secondPage.next).isNull();
+    }
+
+    @Test
+    void willThrowWhenCursorSortDoesNotMatch() {
+        // given
+        String cursor = Base64.getUrlEncoder().encodeToString("id:2".getBytes());
+
+        // then
+        assertThatThrownBy(() -> underTest.getUsersPage(cursor, 2, "-id"))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("Cursor was issued for sort id");
+        verifyNoInteractions(appUserRepository);
+    }
+
     @Test
     void canUpdateUserProfile() {
         // given
@@ -220,38 +488,31 @@ class AppUserServiceTest {
     @Test
     void canRemoveRoleFromUser() {
         // given
-        AppRole appRole = new AppRole(1L, "ROLE_TEST", new ArrayList<>());
-        List<AppRole> rolesBeforeUpdated = new ArrayList<>();
-        rolesBeforeUpdated.add(appRole);
-        AppUser appUser = new AppUser(1L, "TEST_USER", "TEST_PASSWORD", "TEST FULL NAME", rolesBeforeUpdated);
-
-        given(appUserRepository.findById(appUser.getId())).willReturn(Optional.of(appUser));
-        given(appRoleRepository.findById(appRole.getId())).willReturn(Optional.of(appRole));
-        List<AppRole> rolesAfterUpdated = new ArrayList<>();
+        final Long userId = 1L;
+        final Long roleId = 2L;
+        given(appUserRepository.revokeRole(userId, roleId)).willReturn(1);
 
         // when
-        underTest.removeRoleFromUser(appUser.getId(), appRole.getId());
+        underTest.removeRoleFromUser(userId, roleId);
 
         // then
-        ArgumentCaptor<AppUser> appUserArgumentCaptor = ArgumentCaptor.forClass(AppUser.class);
-        Mockito.verify(appUserRepository).save(appUserArgumentCaptor.capture());
-        AppUser capturedAppUser = appUserArgumentCaptor.getValue();
-        assertThat(capturedAppUser).isEqualTo(appUser);
-        assertThat(capturedAppUser.getRoles()).hasSameElementsAs(rolesAfterUpdated);
-        assertThat(capturedAppUser.getRoles()).hasSameSizeAs(rolesAfterUpdated);
+        verify(appUserRepository).revokeRole(userId, roleId);
+        verify(appUserRepository, never()).findById(any());
+        verify(appUserRepository, never()).save(any());
+        verifyNoInteractions(appRoleRepository);
     }
 
     @Test
     void willThrowIfRoleNotFoundWhenRemoveRoleFromUser() {
         // given
-        AppUser appUser = new AppUser(1L, "TEST_USER", "TEST_PASSWORD", "TEST FULL NAME", new ArrayList<>());
-        AppRole appRole = new AppRole(1L, "ROLE_TEST", new ArrayList<>());
-
-        given(appUserRepository.findById(appUser.getId())).willReturn(Optional.of(appUser));
-        given(appRoleRepository.findById(appRole.getId())).willReturn(Optional.empty());
+        final Long userId = 1L;
+        final Long roleId = 2L;
+        given(appUserRepository.revokeRole(userId, roleId)).willReturn(0);
+        given(appUserRepository.existsById(userId)).willReturn(true);
+        given(appRoleRepository.existsById(roleId)).willReturn(false);
 
         // when
-        assertThatThrownBy(() -> underTest.removeRoleFromUser(appUser.getId(), appRole.getId()))
+        assertThatThrownBy(() -> underTest.removeRoleFromUser(userId, roleId))
                 .isInstanceOf(BadRequestException.class)
                 .hasMessageContaining("Role not found in db");
 
@@ -262,14 +523,13 @@ class AppUserServiceTest {
     @Test
     void willThrowIfUserNotFoundWhenRemoveRoleFromUser() {
         // given
-        AppUser appUser = new AppUser(1L, "TEST_USER", "TEST_PASSWORD", "TEST FULL NAME", new ArrayList<>());
-        AppRole appRole = new AppRole(1L, "ROLE_TEST", new ArrayList<>());
-
-        given(appUserRepository.findById(appUser.getId())).willReturn(Optional.empty());
-        given(appRoleRepository.findById(appRole.getId())).willReturn(Optional.of(appRole));
+        final Long userId = 1L;
+        final Long roleId = 2L;
+        given(appUserRepository.revokeRole(userId, roleId)).willReturn(0);
+        given(appUserRepository.existsById(userId)).willReturn(false);
 
         // when
-        assertThatThrownBy(() -> underTest.removeRoleFromUser(appUser.getId(), appRole.getId()))
+        assertThatThrownBy(() -> underTest.removeRoleFromUser(userId, roleId))
                 .isInstanceOf(BadRequestException.class)
                 .hasMessageContaining("User not found in db");
 
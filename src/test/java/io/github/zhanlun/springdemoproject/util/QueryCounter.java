@@ -0,0 +1,27 @@
+package io.github.zhanlun.springdemoproject.util;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the SQL statements Hibernate prepares, so tests can assert how many
+ * round trips an endpoint makes. Registered in the test application.properties.
+ */
+public class QueryCounter implements StatementInspector {
+    private static final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public String inspect(String sql) {
+        count.incrementAndGet();
+        return sql;
+    }
+
+    public static void reset() {
+        count.set(0);
+    }
+
+    public static int count() {
+        return count.get();
+    }
+}